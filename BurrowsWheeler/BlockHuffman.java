@@ -0,0 +1,229 @@
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Canonical Huffman coding of a whole byte block held in memory.
+ * The compressed block is 256 code lengths of 5 bits each followed by the codewords.
+ */
+public class BlockHuffman {
+
+    private static final int R = 256;
+    // longest codeword, frequencies are scaled down until the tree fits (as bzip2 does)
+    static final int MAX_LENGTH = 20;
+    private static final int LENGTH_BITS = 5;
+
+    // do not instantiate
+    private BlockHuffman() { }
+
+    // compress in[0, n)
+    public static byte[] compress(byte[] in, int n) {
+        int[] freq = new int[R];
+        for (int i = 0; i < n; i++) freq[in[i] & 0xff]++;
+        int[] length = codeLengths(freq);
+        int[] code = canonicalCodes(length);
+
+        long bits = (long) R * LENGTH_BITS;
+        for (int c = 0; c < R; c++) bits += (long) freq[c] * length[c];
+        BitWriter writer = new BitWriter((int) ((bits + 7) / 8));
+        for (int c = 0; c < R; c++) writer.write(length[c], LENGTH_BITS);
+        for (int i = 0; i < n; i++) {
+            int c = in[i] & 0xff;
+            writer.write(code[c], length[c]);
+        }
+        return writer.toByteArray();
+    }
+
+    // upper bound on the length of compress(in, n): the code lengths, then codes
+    // of at most MAX_LENGTH bits
+    static long maxCompressedLength(int n) {
+        return ((long) R * LENGTH_BITS + (long) n * MAX_LENGTH + 7) / 8;
+    }
+
+    // expand the first n symbols of compressed block in into out
+    public static void expand(byte[] in, int n, byte[] out) {
+        BitReader reader = new BitReader(in);
+        int[] length = new int[R];
+        for (int c = 0; c < R; c++) length[c] = reader.read(LENGTH_BITS);
+
+        Decoder decoder = new Decoder(length);
+        for (int i = 0; i < n; i++) out[i] = (byte) decoder.decode(reader);
+    }
+
+    // Huffman code length of every symbol, at most MAX_LENGTH
+    static int[] codeLengths(int[] freq) {
+        int[] weight = freq.clone();
+        while (true) {
+            int[] length = treeDepths(weight);
+            int max = 0;
+            for (int len : length) max = Math.max(max, len);
+            if (max <= MAX_LENGTH) return length;
+            // flatten the distribution, keeping every used symbol
+            for (int c = 0; c < weight.length; c++) {
+                if (weight[c] > 0) weight[c] = (weight[c] >> 1) | 1;
+            }
+        }
+    }
+
+    private static int[] treeDepths(int[] weight) {
+        int r = weight.length;
+        int[] length = new int[r];
+        PriorityQueue<Node> pq = new PriorityQueue<>();
+        for (int c = 0; c < r; c++) {
+            if (weight[c] > 0) pq.add(new Node(c, weight[c], null, null));
+        }
+        // a single symbol still needs a 1-bit code
+        if (pq.size() == 1) {
+            length[pq.poll().ch] = 1;
+            return length;
+        }
+        while (pq.size() > 1) {
+            Node left = pq.poll();
+            Node right = pq.poll();
+            pq.add(new Node(-1, left.freq + right.freq, left, right));
+        }
+        if (!pq.isEmpty()) depths(pq.poll(), 0, length);
+        return length;
+    }
+
+    private static void depths(Node x, int depth, int[] length) {
+        if (x.isLeaf()) {
+            length[x.ch] = depth;
+            return;
+        }
+        depths(x.left, depth + 1, length);
+        depths(x.right, depth + 1, length);
+    }
+
+    // assign consecutive codes in (length, symbol) order
+    static int[] canonicalCodes(int[] length) {
+        int[] count = new int[MAX_LENGTH + 1];
+        for (int len : length) count[len]++;
+        count[0] = 0;
+        int[] next = new int[MAX_LENGTH + 1];
+        for (int len = 1, code = 0; len <= MAX_LENGTH; len++) {
+            code = (code + count[len - 1]) << 1;
+            next[len] = code;
+        }
+        int[] code = new int[length.length];
+        for (int c = 0; c < length.length; c++) {
+            if (length[c] != 0) code[c] = next[length[c]]++;
+        }
+        return code;
+    }
+
+    // canonical decoder: the codes of each length are consecutive integers
+    static class Decoder {
+
+        private final int[] count;
+        private final int[] symbols;
+
+        Decoder(int[] length) {
+            // symbols ordered by (length, symbol) and number of codes of each length
+            count = new int[MAX_LENGTH + 1];
+            for (int len : length) count[len]++;
+            count[0] = 0;
+            int[] offset = new int[MAX_LENGTH + 2];
+            for (int len = 1; len <= MAX_LENGTH; len++) offset[len + 1] = offset[len] + count[len];
+            symbols = new int[length.length];
+            for (int c = 0; c < length.length; c++) {
+                if (length[c] != 0) symbols[offset[length[c]]++] = c;
+            }
+        }
+
+        int decode(BitReader reader) {
+            int code = 0, first = 0, index = 0;
+            for (int len = 1; len <= MAX_LENGTH; len++) {
+                code |= reader.readBit();
+                int c = count[len];
+                if (code - first < c) return symbols[index + code - first];
+                index += c;
+                first = (first + c) << 1;
+                code <<= 1;
+            }
+            throw new IllegalArgumentException("corrupt block");
+        }
+    }
+
+    private static class Node implements Comparable<Node> {
+
+        private final int ch;
+        private final long freq;
+        private final Node left, right;
+
+        Node(int ch, long freq, Node left, Node right) {
+            this.ch = ch;
+            this.freq = freq;
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean isLeaf() {
+            return left == null && right == null;
+        }
+
+        @Override
+        public int compareTo(Node that) {
+            return Long.compare(freq, that.freq);
+        }
+    }
+
+    // msb-first bit writer, growing past the initial capacity if needed
+    static class BitWriter {
+
+        private byte[] buffer;
+        private int pos;
+        private long bits;
+        private int count;
+
+        BitWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void write(int value, int r) {
+            bits = (bits << r) | (value & ((1L << r) - 1));
+            count += r;
+            while (count >= 8) {
+                if (pos == buffer.length) buffer = Arrays.copyOf(buffer, 2 * buffer.length + 16);
+                count -= 8;
+                buffer[pos++] = (byte) (bits >>> count);
+            }
+        }
+
+        byte[] toByteArray() {
+            if (count > 0) write(0, 8 - count);
+            return pos == buffer.length ? buffer : Arrays.copyOf(buffer, pos);
+        }
+    }
+
+    // msb-first bit reader
+    static class BitReader {
+
+        private final byte[] buffer;
+        private long pos;
+
+        BitReader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readBit() {
+            int b = buffer[(int) (pos >>> 3)] >>> (7 - (int) (pos & 7));
+            pos++;
+            return b & 1;
+        }
+
+        int read(int r) {
+            int x = 0;
+            for (int i = 0; i < r; i++) x = (x << 1) | readBit();
+            return x;
+        }
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        byte[] in = "it was the best of times it was the worst of times".getBytes();
+        byte[] compressed = compress(in, in.length);
+        byte[] out = new byte[in.length];
+        expand(compressed, in.length, out);
+        System.out.println(new String(out) + " (" + compressed.length + " bytes)");
+    }
+}
@@ -1,8 +1,21 @@
 import edu.princeton.cs.algs4.BinaryStdIn;
 import edu.princeton.cs.algs4.BinaryStdOut;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 public class BurrowsWheeler {
 
+    // block size bounds for the framed format, in bytes
+    static final int MIN_BLOCK_SIZE = 100 * 1024;
+    static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+    static final int DEFAULT_BLOCK_SIZE = 900 * 1000;
+    // independent decoding streams per block, see inverseTransformPacked
+    static final int STREAMS = 4;
+
     // apply Burrows-Wheeler transform,
     // reading from standard input and writing to standard output
     public static void transform() {
@@ -55,6 +68,210 @@ public class BurrowsWheeler {
         BinaryStdOut.close();
     }
 
+    // apply Burrows-Wheeler transform block by block, reading from standard input
+    // and writing one frame per block to standard output: int length,
+    // STREAMS ints of checkpoint rows (the first is start), then the last column
+    public static void transform(int blockSize) {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException();
+        byte[] block = new byte[blockSize];
+        byte[] last = new byte[blockSize];
+        int[] checkpoints = new int[STREAMS];
+        while (!BinaryStdIn.isEmpty()) {
+            int n = 0;
+            while (n < blockSize && !BinaryStdIn.isEmpty()) {
+                block[n++] = BinaryStdIn.readByte();
+            }
+            transform(block, n, last, checkpoints);
+            BinaryStdOut.write(n);
+            for (int row : checkpoints) BinaryStdOut.write(row);
+            for (int i = 0; i < n; i++) BinaryStdOut.write(last[i]);
+            // let the consumer start on this block before the next one is read
+            BinaryStdOut.flush();
+        }
+        BinaryStdOut.close();
+    }
+
+    // apply Burrows-Wheeler inverse transform to a framed stream,
+    // decoding one block at a time
+    public static void inverseTransformBlocks() {
+        byte[] last = new byte[0];
+        byte[] out = new byte[0];
+        int[] checkpoints = new int[STREAMS];
+        while (!BinaryStdIn.isEmpty()) {
+            int n = BinaryStdIn.readInt();
+            for (int s = 0; s < STREAMS; s++) checkpoints[s] = BinaryStdIn.readInt();
+            if (badFrame(n, checkpoints)) throw new IllegalArgumentException("corrupt frame");
+            if (last.length < n) {
+                last = new byte[n];
+                out = new byte[n];
+            }
+            for (int i = 0; i < n; i++) last[i] = BinaryStdIn.readByte();
+            inverseTransform(last, n, checkpoints, out);
+            for (int i = 0; i < n; i++) BinaryStdOut.write(out[i]);
+            BinaryStdOut.flush();
+        }
+        BinaryStdOut.close();
+    }
+
+    // apply block transform from inFile to outFile, producing the same frames as transform(blockSize);
+    // every block is copied straight out of a memory mapping of the input
+    public static void transform(String inFile, String outFile, int blockSize) throws IOException {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException();
+        try (FileChannel in = FileChannel.open(Paths.get(inFile), StandardOpenOption.READ);
+             ChannelWriter out = new ChannelWriter(outFile)) {
+            long size = in.size();
+            byte[] block = new byte[(int) Math.min(blockSize, size)];
+            byte[] last = new byte[block.length];
+            int[] checkpoints = new int[STREAMS];
+            for (long pos = 0; pos < size; pos += blockSize) {
+                int n = (int) Math.min(blockSize, size - pos);
+                in.map(FileChannel.MapMode.READ_ONLY, pos, n).get(block, 0, n);
+                transform(block, n, last, checkpoints);
+                out.putInt(n);
+                for (int row : checkpoints) out.putInt(row);
+                out.put(last, 0, n);
+            }
+        }
+    }
+
+    // apply block inverse transform from inFile to outFile
+    public static void inverseTransform(String inFile, String outFile) throws IOException {
+        int headerSize = 4 * (STREAMS + 1);
+        try (FileChannel in = FileChannel.open(Paths.get(inFile), StandardOpenOption.READ);
+             ChannelWriter out = new ChannelWriter(outFile)) {
+            long size = in.size();
+            byte[] last = new byte[0];
+            byte[] block = new byte[0];
+            int[] checkpoints = new int[STREAMS];
+            for (long pos = 0; pos < size; ) {
+                if (size - pos < headerSize) throw new IOException("corrupt frame");
+                ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, pos, headerSize);
+                int n = header.getInt();
+                for (int s = 0; s < STREAMS; s++) checkpoints[s] = header.getInt();
+                if (badFrame(n, checkpoints) || n > size - pos - headerSize)
+                    throw new IOException("corrupt frame");
+                if (last.length < n) {
+                    last = new byte[n];
+                    block = new byte[n];
+                }
+                in.map(FileChannel.MapMode.READ_ONLY, pos + headerSize, n).get(last, 0, n);
+                inverseTransform(last, n, checkpoints, block);
+                out.put(block, 0, n);
+                pos += headerSize + n;
+            }
+        }
+    }
+
+    static boolean badFrame(int n, int[] checkpoints) {
+        return n > MAX_BLOCK_SIZE || badCheckpoints(n, checkpoints);
+    }
+
+    // checkpoint rows of a transformed block of any length n
+    static boolean badCheckpoints(int n, int[] checkpoints) {
+        if (n < 0) return true;
+        for (int row : checkpoints) {
+            if (n > 0 && (row < 0 || row >= n)) return true;
+        }
+        return false;
+    }
+
+    // write the last column of block[0, n) into last, and for every stream s the row
+    // of the rotation starting at s * (n / STREAMS) into checkpoints[s]
+    static void transform(byte[] block, int n, byte[] last, int[] checkpoints) {
+        CircularSuffixArray csa = new CircularSuffixArray(block, 0, n, CircularSuffixArray.Backend.AUTO);
+        int step = n / STREAMS;
+        Arrays.fill(checkpoints, -1);
+        for (int i = 0; i < n; i++) {
+            int index = csa.index(i);
+            if (index == 0) {
+                // tiny blocks are decoded by the last stream alone
+                if (step == 0) Arrays.fill(checkpoints, i);
+                else checkpoints[0] = i;
+            } else if (step > 0 && index % step == 0 && index / step < STREAMS) {
+                checkpoints[index / step] = i;
+            }
+            last[i] = block[index == 0 ? n - 1 : index - 1];
+        }
+    }
+
+    // rebuild the block whose last column is last[0, n) into out,
+    // checkpoints are the rows written by transform(block, n, last, checkpoints)
+    static void inverseTransform(byte[] last, int n, int[] checkpoints, byte[] out) {
+        // counting sort
+        int[] count = new int[257];
+        for (int i = 0; i < n; i++) {
+            count[(last[i] & 0xff) + 1]++;
+        }
+        for (int i = 1; i < 257; i++) {
+            count[i] += count[i - 1];
+        }
+        if (n <= 1 << 24) inverseTransformPacked(last, n, count, checkpoints, out);
+        else inverseTransformWide(last, n, count, checkpoints, out);
+    }
+
+    // row j of the table holds next[j] << 8 | c: the row of the rotation starting
+    // one character later, and its last character c, which is the first character
+    // of row j; one random access per output byte.
+    // The block is decoded as STREAMS (4) segments walked in lockstep, so that
+    // their cache misses overlap instead of being paid one after another.
+    private static void inverseTransformPacked(byte[] last, int n, int[] count, int[] checkpoints, byte[] out) {
+        int[] table = new int[n];
+        for (int i = 0; i < n; i++) {
+            int c = last[i] & 0xff;
+            table[count[c]++] = (i << 8) | c;
+        }
+        int step = n / STREAMS;
+        int r0 = checkpoints[0], r1 = checkpoints[1], r2 = checkpoints[2], r3 = checkpoints[3];
+        int p0 = 0, p1 = step, p2 = 2 * step, p3 = 3 * step;
+        for (int k = 0; k < step; k++) {
+            int e0 = table[r0], e1 = table[r1], e2 = table[r2], e3 = table[r3];
+            out[p0++] = (byte) e0;
+            out[p1++] = (byte) e1;
+            out[p2++] = (byte) e2;
+            out[p3++] = (byte) e3;
+            r0 = e0 >>> 8;
+            r1 = e1 >>> 8;
+            r2 = e2 >>> 8;
+            r3 = e3 >>> 8;
+        }
+        // the last segment also covers the n % STREAMS leftover bytes
+        while (p3 < n) {
+            int e3 = table[r3];
+            out[p3++] = (byte) e3;
+            r3 = e3 >>> 8;
+        }
+    }
+
+    // same as inverseTransformPacked for blocks whose rows do not fit in 24 bits
+    private static void inverseTransformWide(byte[] last, int n, int[] count, int[] checkpoints, byte[] out) {
+        long[] table = new long[n];
+        for (int i = 0; i < n; i++) {
+            int c = last[i] & 0xff;
+            table[count[c]++] = ((long) i << 8) | c;
+        }
+        int step = n / STREAMS;
+        int r0 = checkpoints[0], r1 = checkpoints[1], r2 = checkpoints[2], r3 = checkpoints[3];
+        int p0 = 0, p1 = step, p2 = 2 * step, p3 = 3 * step;
+        for (int k = 0; k < step; k++) {
+            long e0 = table[r0], e1 = table[r1], e2 = table[r2], e3 = table[r3];
+            out[p0++] = (byte) e0;
+            out[p1++] = (byte) e1;
+            out[p2++] = (byte) e2;
+            out[p3++] = (byte) e3;
+            r0 = (int) (e0 >>> 8);
+            r1 = (int) (e1 >>> 8);
+            r2 = (int) (e2 >>> 8);
+            r3 = (int) (e3 >>> 8);
+        }
+        while (p3 < n) {
+            long e3 = table[r3];
+            out[p3++] = (byte) e3;
+            r3 = (int) (e3 >>> 8);
+        }
+    }
+
     private static String readString() {
         StringBuilder sb = new StringBuilder();
         while (!BinaryStdIn.isEmpty()) {
@@ -67,11 +284,24 @@ public class BurrowsWheeler {
 
     // if args[0] is "-", apply Burrows-Wheeler transform
     // if args[0] is "+", apply Burrows-Wheeler inverse transform
-    public static void main(String[] args) {
+    // if args[0] is "-b", apply block transform, args[1] is the optional block size
+    // if args[0] is "+b", apply block inverse transform
+    // if args[0] is "-f", apply block transform from file args[1] to file args[2],
+    // args[3] is the optional block size
+    // if args[0] is "+f", apply block inverse transform from file args[1] to file args[2]
+    public static void main(String[] args) throws IOException {
         if ("-".equals(args[0])) {
             transform();
         } else if ("+".equals(args[0])) {
             inverseTransform();
+        } else if ("-b".equals(args[0])) {
+            transform(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BLOCK_SIZE);
+        } else if ("+b".equals(args[0])) {
+            inverseTransformBlocks();
+        } else if ("-f".equals(args[0])) {
+            transform(args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BLOCK_SIZE);
+        } else if ("+f".equals(args[0])) {
+            inverseTransform(args[1], args[2]);
         }
     }
 
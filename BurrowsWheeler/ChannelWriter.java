@@ -0,0 +1,59 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes bytes and big-endian ints (the layout of BinaryStdOut.write(int)) to a file
+ * through a direct buffer that is flushed to the channel in large writes.
+ */
+class ChannelWriter implements Closeable {
+
+    private static final int CAPACITY = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    ChannelWriter(String file) throws IOException {
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(CAPACITY);
+    }
+
+    void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) flush();
+        buffer.put(b);
+    }
+
+    void putInt(int x) throws IOException {
+        if (buffer.remaining() < 4) flush();
+        buffer.putInt(x);
+    }
+
+    void put(byte[] a, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) flush();
+            int k = Math.min(length, buffer.remaining());
+            buffer.put(a, offset, k);
+            offset += k;
+            length -= k;
+        }
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -2,44 +2,114 @@ import java.util.Arrays;
 
 public class CircularSuffixArray {
 
+    // inputs shorter than this are always sorted by 3-way radix quicksort
+    private static final int CUTOFF = 64;
+
     private final int[] sortedIndexes;
     private final int n;
 
+    // suffix sorting backend.
+    // Memory while sorting, per input character: 4 bytes for the text and 4 for the
+    // suffix array, which becomes the index; SA_IS adds 1 for the suffix types and,
+    // when it recurses, at most 2 more for the buckets and types of the reduced
+    // string. So about 9 to 11 bytes per character in all, 4 of them kept
+    public enum Backend {
+        // SA_IS for large inputs, THREE_WAY for tiny ones
+        AUTO,
+        // 3-way radix quicksort, fast on random text but quadratic on repetitive text
+        THREE_WAY,
+        // linear time induced sorting of the suffixes of the least rotation
+        SA_IS
+    }
+
     // circular suffix array of s
     public CircularSuffixArray(String s) {
-        if (s == null) throw new IllegalArgumentException();
+        this(s, Backend.AUTO);
+    }
+
+    // circular suffix array of s, sorted with the given backend
+    public CircularSuffixArray(String s, Backend backend) {
+        if (s == null || backend == null) throw new IllegalArgumentException();
         n = s.length();
-        // Arrays.sort with comparator pass 99%
-        // must use 3-way quick sort to pass 100%
-        sortedIndexes = threeWaySort(s);
+        // one more slot for the sentinel of SA_IS
+        int[] text = new int[n + 1];
+        for (int i = 0; i < n; i++) text[i] = s.charAt(i) + 1;
+        sortedIndexes = sort(text, backend);
+    }
+
+    // circular suffix array of bytes[offset, offset + length), sorted with the given backend
+    public CircularSuffixArray(byte[] bytes, int offset, int length, Backend backend) {
+        if (bytes == null || backend == null) throw new IllegalArgumentException();
+        if (offset < 0 || length < 0 || offset + length > bytes.length)
+            throw new IllegalArgumentException();
+        n = length;
+        int[] text = new int[n + 1];
+        for (int i = 0; i < n; i++) text[i] = (bytes[offset + i] & 0xff) + 1;
+        sortedIndexes = sort(text, backend);
+    }
+
+    // text[0, n) holds the characters shifted by one, so that 0 is free for the sentinel.
+    // Equal rotations only exist if text is a power of a shorter string,
+    // so sort the rotations of that primitive root (which are all distinct)
+    // and list equal rotations in ascending order, whatever the backend.
+    // The result has n + 1 slots, index() reads the first n
+    private int[] sort(int[] text, Backend backend) {
+        int[] sa = new int[n + 1];
+        if (n == 0) return sa;
+        int p = period(text, sa);
+        if (backend == Backend.THREE_WAY || (backend == Backend.AUTO && p < CUTOFF)) {
+            System.arraycopy(threeWaySort(text, p), 0, sa, 0, p);
+        } else {
+            inducedSort(text, p, sa);
+        }
+        if (p == n) return sa;
+        // from the back, so that sa[r] is read before slots from r on are written
+        int copies = n / p;
+        for (int r = p - 1; r >= 0; r--) {
+            int first = sa[r];
+            for (int c = 0; c < copies; c++) sa[r * copies + c] = first + c * p;
+        }
+        return sa;
+    }
+
+    // length of the primitive root of text[0, n), or n if it is not periodic;
+    // fail (at least n long) holds the KMP failure function
+    private int period(int[] text, int[] fail) {
+        fail[0] = 0;
+        for (int i = 1, k = 0; i < n; i++) {
+            while (k > 0 && text[i] != text[k]) k = fail[k - 1];
+            if (text[i] == text[k]) k++;
+            fail[i] = k;
+        }
+        int p = n - fail[n - 1];
+        return n % p == 0 ? p : n;
     }
 
-    private int[] threeWaySort(String s) {
-        int n = s.length();
-        int[] arr = createArray(n);
-        sort(s, arr, 0, n-1, 0);
+    private int[] threeWaySort(int[] text, int p) {
+        int[] arr = createArray(p);
+        sort(text, p, arr, 0, p - 1, 0);
         return arr;
     }
 
-    private void sort(String s, int[] arr, int lo, int hi, int d) {
+    private void sort(int[] text, int p, int[] arr, int lo, int hi, int d) {
         if (lo >= hi) return;
-        char pivot = charAt(s, arr[lo] + d);
+        int pivot = charAt(text, p, arr[lo] + d);
         int left = lo, curr = lo + 1, right = hi;
         // color sort
         while (curr <= right) {
-            char c = charAt(s, arr[curr] + d);
+            int c = charAt(text, p, arr[curr] + d);
             if (c > pivot) swap(curr, right--, arr);
             else if (c < pivot) swap(left++, curr++, arr);
             else curr++;
         }
-        sort(s, arr, lo, left - 1, d);
-        // d cannot greater than n
-        if (d < s.length()) sort(s, arr, left, right, d + 1);
-        sort(s, arr, right + 1, hi, d);
+        sort(text, p, arr, lo, left - 1, d);
+        // d cannot greater than p
+        if (d < p) sort(text, p, arr, left, right, d + 1);
+        sort(text, p, arr, right + 1, hi, d);
     }
 
-    private char charAt(String s, int index) {
-        return s.charAt(index % s.length());
+    private int charAt(int[] text, int p, int index) {
+        return text[index % p];
     }
 
     private void swap(int i, int j, int[] arr) {
@@ -48,6 +118,161 @@ public class CircularSuffixArray {
         arr[j] = temp;
     }
 
+    // sort the rotations of the primitive text[0, p) into sa[0, p).
+    // Its least rotation w is a Lyndon word, and the rotations of a Lyndon word are
+    // in the same order as its suffixes: where one suffix is a prefix of another,
+    // the rotations go on with w itself against a later rotation, which w is smaller
+    // than. So rotate text to w, build the suffix array of w + sentinel in place,
+    // and map the suffixes back to rotations of text
+    private static void inducedSort(int[] text, int p, int[] sa) {
+        int r = leastRotation(text, p);
+        reverse(text, 0, r);
+        reverse(text, r, p);
+        reverse(text, 0, p);
+        text[p] = 0;
+        int k = 0;
+        for (int i = 0; i < p; i++) k = Math.max(k, text[i]);
+        sais(text, 0, sa, p + 1, k + 1);
+        // sa[0] is the sentinel
+        for (int i = 0; i < p; i++) {
+            int j = sa[i + 1] + r;
+            sa[i] = j < p ? j : j - p;
+        }
+    }
+
+    // start of the least rotation of the primitive text[0, p), two pointers in O(p)
+    private static int leastRotation(int[] text, int p) {
+        int i = 0, j = 1, k = 0;
+        while (i < p && j < p && k < p) {
+            int a = i + k < p ? text[i + k] : text[i + k - p];
+            int b = j + k < p ? text[j + k] : text[j + k - p];
+            if (a == b) {
+                k++;
+                continue;
+            }
+            if (a > b) i += k + 1;
+            else j += k + 1;
+            if (i == j) j++;
+            k = 0;
+        }
+        return Math.min(i, j);
+    }
+
+    private static void reverse(int[] a, int lo, int hi) {
+        for (hi--; lo < hi; lo++, hi--) {
+            int temp = a[lo];
+            a[lo] = a[hi];
+            a[hi] = temp;
+        }
+    }
+
+    // SA-IS (Nong, Zhang and Chan) of s[so, so + n) into sa[0, n): s[so + n - 1] must be
+    // a unique smallest symbol 0, all symbols must be in [0, k). The reduced string and
+    // its suffix array live in sa, so s may be the end of sa itself when recursing
+    private static void sais(int[] s, int so, int[] sa, int n, int k) {
+        // true if suffix i is S-type
+        boolean[] t = new boolean[n];
+        t[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--) {
+            t[i] = s[so + i] < s[so + i + 1] || (s[so + i] == s[so + i + 1] && t[i + 1]);
+        }
+
+        // stage 1: sort the LMS substrings
+        int[] bucket = new int[k];
+        getBuckets(s, so, bucket, n, k, true);
+        Arrays.fill(sa, 0, n, -1);
+        for (int i = 1; i < n; i++) {
+            if (isLMS(t, i)) sa[--bucket[s[so + i]]] = i;
+        }
+        induceL(t, sa, s, so, bucket, n, k);
+        induceS(t, sa, s, so, bucket, n, k);
+
+        // compact the sorted LMS substrings into the first n1 items
+        int n1 = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLMS(t, sa[i])) sa[n1++] = sa[i];
+        }
+
+        // name the LMS substrings, equal substrings share a name
+        Arrays.fill(sa, n1, n, -1);
+        int name = 0, prev = -1;
+        for (int i = 0; i < n1; i++) {
+            int pos = sa[i];
+            boolean diff = false;
+            for (int d = 0; d < n; d++) {
+                if (prev == -1 || s[so + pos + d] != s[so + prev + d] || t[pos + d] != t[prev + d]) {
+                    diff = true;
+                    break;
+                } else if (d > 0 && (isLMS(t, pos + d) || isLMS(t, prev + d))) {
+                    break;
+                }
+            }
+            if (diff) {
+                name++;
+                prev = pos;
+            }
+            sa[n1 + pos / 2] = name - 1;
+        }
+        // the reduced string goes to the end of sa, n1 <= n / 2 keeps it clear of sa[0, n1)
+        int s1 = n - n1;
+        for (int i = n - 1, j = n - 1; i >= n1; i--) {
+            if (sa[i] >= 0) sa[j--] = sa[i];
+        }
+
+        // stage 2: sort the reduced string into sa[0, n1), recursing if names are not unique
+        if (name < n1) {
+            sais(sa, s1, sa, n1, name);
+        } else {
+            for (int i = 0; i < n1; i++) sa[sa[s1 + i]] = i;
+        }
+
+        // stage 3: induce the full suffix array from the sorted LMS suffixes
+        for (int i = 1, j = s1; i < n; i++) {
+            if (isLMS(t, i)) sa[j++] = i;
+        }
+        for (int i = 0; i < n1; i++) sa[i] = sa[s1 + sa[i]];
+        getBuckets(s, so, bucket, n, k, true);
+        Arrays.fill(sa, n1, n, -1);
+        for (int i = n1 - 1; i >= 0; i--) {
+            int j = sa[i];
+            sa[i] = -1;
+            sa[--bucket[s[so + j]]] = j;
+        }
+        induceL(t, sa, s, so, bucket, n, k);
+        induceS(t, sa, s, so, bucket, n, k);
+    }
+
+    private static boolean isLMS(boolean[] t, int i) {
+        return i > 0 && t[i] && !t[i - 1];
+    }
+
+    // start (or end) index of every symbol's bucket
+    private static void getBuckets(int[] s, int so, int[] bucket, int n, int k, boolean end) {
+        Arrays.fill(bucket, 0, k, 0);
+        for (int i = 0; i < n; i++) bucket[s[so + i]]++;
+        int sum = 0;
+        for (int i = 0; i < k; i++) {
+            sum += bucket[i];
+            bucket[i] = end ? sum : sum - bucket[i];
+        }
+    }
+
+    private static void induceL(boolean[] t, int[] sa, int[] s, int so, int[] bucket, int n, int k) {
+        getBuckets(s, so, bucket, n, k, false);
+        for (int i = 0; i < n; i++) {
+            int j = sa[i] - 1;
+            if (j >= 0 && !t[j]) sa[bucket[s[so + j]]++] = j;
+        }
+    }
+
+    private static void induceS(boolean[] t, int[] sa, int[] s, int so, int[] bucket, int n, int k) {
+        getBuckets(s, so, bucket, n, k, true);
+        for (int i = n - 1; i >= 0; i--) {
+            int j = sa[i] - 1;
+            if (j >= 0 && t[j]) sa[--bucket[s[so + j]]] = j;
+        }
+    }
+
     // LSD sort pass 97%
     private int[] LSDSort(String s) {
         int[] sortedIndexes = createArray(n);
@@ -96,6 +321,15 @@ public class CircularSuffixArray {
     public static void main(String[] args) {
         CircularSuffixArray c = new CircularSuffixArray("BAABA");
         System.out.println(c.index(0));
+        // both backends must agree, including on periodic input
+        String[] tests = {"ABRACADABRA!", "AAAAAAAA", "ABABABAB", "BAABA", "", "A"};
+        for (String s : tests) {
+            CircularSuffixArray a = new CircularSuffixArray(s, Backend.THREE_WAY);
+            CircularSuffixArray b = new CircularSuffixArray(s, Backend.SA_IS);
+            for (int i = 0; i < s.length(); i++) {
+                if (a.index(i) != b.index(i)) System.out.println("mismatch on " + s);
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,441 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * bzip2-style compressor: every block goes through an initial run-length stage,
+ * the Burrows-Wheeler transform, move-to-front, zero-run coding (RUNA / RUNB)
+ * and Huffman coding with up to 6 tables switched every 50 symbols.
+ *
+ * Stream: "BWZ", version byte, int block size, then one frame per block:
+ * int length, int CRC-32 of the block, int run-length coded length,
+ * BurrowsWheeler.STREAMS ints of checkpoint rows, int symbol count,
+ * int coded length, coded bytes. A length of -1 ends the stream.
+ */
+public class Compressor {
+
+    private static final byte[] MAGIC = {'B', 'W', 'Z'};
+    private static final int VERSION = 1;
+    private static final int END_OF_STREAM = -1;
+
+    // initial run-length coding: runs of 4 to 259 equal bytes become 4 bytes and a count
+    private static final int RUN_START = 4;
+    private static final int MAX_RUN = RUN_START + 255;
+
+    // zero-run coding alphabet: RUNA, RUNB, then MTF indexes 1..255 shifted by one
+    private static final int RUNA = 0, RUNB = 1;
+    private static final int ALPHABET = 257;
+
+    // multi-table Huffman coding
+    private static final int GROUP_SIZE = 50;
+    private static final int MAX_TABLES = 6;
+    private static final int ITERATIONS = 4;
+
+    private final int blockSize;
+
+    public Compressor(int blockSize) {
+        if (blockSize < BurrowsWheeler.MIN_BLOCK_SIZE || blockSize > BurrowsWheeler.MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException();
+        this.blockSize = blockSize;
+    }
+
+    public void compress(InputStream in, OutputStream out) throws IOException {
+        DataOutputStream writer = new DataOutputStream(out);
+        writer.write(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeInt(blockSize);
+        byte[] block = new byte[blockSize];
+        while (true) {
+            int n = readFully(in, block);
+            if (n == 0) break;
+            writeBlock(block, n, writer);
+        }
+        writer.writeInt(END_OF_STREAM);
+        writer.flush();
+    }
+
+    public static void decompress(InputStream in, OutputStream out) throws IOException {
+        DataInputStream reader = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        reader.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) throw new IOException("not a compressed stream");
+        }
+        if (reader.readUnsignedByte() != VERSION) throw new IOException("unsupported version");
+        int blockSize = reader.readInt();
+        if (blockSize < BurrowsWheeler.MIN_BLOCK_SIZE || blockSize > BurrowsWheeler.MAX_BLOCK_SIZE)
+            throw new IOException("corrupt header");
+        while (true) {
+            int n = reader.readInt();
+            if (n == END_OF_STREAM) break;
+            if (n <= 0 || n > blockSize) throw new IOException("corrupt frame");
+            out.write(readBlock(n, reader));
+        }
+        out.flush();
+    }
+
+    private static void writeBlock(byte[] block, int n, DataOutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, n);
+        byte[] runs = new byte[n + n / RUN_START + 1];
+        int m = runLengthEncode(block, n, runs);
+        byte[] last = new byte[m];
+        int[] checkpoints = new int[BurrowsWheeler.STREAMS];
+        BurrowsWheeler.transform(runs, m, last, checkpoints);
+        MoveToFront.encode(last, m, last);
+        int[] symbols = new int[m];
+        int k = zeroRunEncode(last, m, symbols);
+        byte[] coded = huffmanEncode(symbols, k);
+
+        out.writeInt(n);
+        out.writeInt((int) crc.getValue());
+        out.writeInt(m);
+        for (int row : checkpoints) out.writeInt(row);
+        out.writeInt(k);
+        out.writeInt(coded.length);
+        out.write(coded);
+    }
+
+    private static byte[] readBlock(int n, DataInputStream in) throws IOException {
+        int crc = in.readInt();
+        int m = in.readInt();
+        int[] checkpoints = new int[BurrowsWheeler.STREAMS];
+        for (int s = 0; s < checkpoints.length; s++) checkpoints[s] = in.readInt();
+        int k = in.readInt();
+        int length = in.readInt();
+        // the run-length stage can make a block longer than MAX_BLOCK_SIZE
+        if (m <= 0 || m > n + n / RUN_START + 1 || BurrowsWheeler.badCheckpoints(m, checkpoints)
+                || k <= 0 || k > m || length < 0 || length > maxCodedLength(k))
+            throw new IOException("corrupt frame");
+        byte[] coded = new byte[length];
+        in.readFully(coded);
+
+        byte[] block = new byte[n];
+        try {
+            int[] symbols = huffmanDecode(coded, k);
+            byte[] last = new byte[m];
+            if (zeroRunDecode(symbols, k, last) != m) throw new IOException("corrupt block");
+            MoveToFront.decode(last, m, last);
+            byte[] runs = new byte[m];
+            BurrowsWheeler.inverseTransform(last, m, checkpoints, runs);
+            if (runLengthDecode(runs, m, block) != n) throw new IOException("corrupt block");
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("corrupt block", e);
+        }
+        CRC32 actual = new CRC32();
+        actual.update(block, 0, n);
+        if ((int) actual.getValue() != crc) throw new IOException("CRC mismatch");
+        return block;
+    }
+
+    // initial run-length coding of in[0, n) into out, return the coded length
+    static int runLengthEncode(byte[] in, int n, byte[] out) {
+        int m = 0;
+        for (int i = 0; i < n; ) {
+            byte b = in[i];
+            int run = 1;
+            while (i + run < n && in[i + run] == b && run < MAX_RUN) run++;
+            if (run >= RUN_START) {
+                for (int j = 0; j < RUN_START; j++) out[m++] = b;
+                out[m++] = (byte) (run - RUN_START);
+            } else {
+                for (int j = 0; j < run; j++) out[m++] = b;
+            }
+            i += run;
+        }
+        return m;
+    }
+
+    // inverse of runLengthEncode, return the decoded length
+    static int runLengthDecode(byte[] in, int m, byte[] out) {
+        int n = 0, run = 0;
+        byte prev = 0;
+        for (int i = 0; i < m; ) {
+            byte b = in[i++];
+            out[n++] = b;
+            run = (run > 0 && b == prev) ? run + 1 : 1;
+            prev = b;
+            if (run == RUN_START) {
+                int extra = i < m ? in[i++] & 0xff : 0;
+                for (int j = 0; j < extra; j++) out[n++] = b;
+                run = 0;
+            }
+        }
+        return n;
+    }
+
+    // replace runs of MTF index 0 by their length in bijective base 2 (RUNA = 1, RUNB = 2),
+    // shift the other indexes up by one, return the number of symbols
+    static int zeroRunEncode(byte[] in, int m, int[] out) {
+        int k = 0;
+        for (int i = 0; i < m; ) {
+            if (in[i] != 0) {
+                out[k++] = (in[i++] & 0xff) + 1;
+                continue;
+            }
+            int run = 0;
+            while (i < m && in[i] == 0) {
+                run++;
+                i++;
+            }
+            for (run--; ; run = (run - 2) / 2) {
+                out[k++] = (run & 1) == 0 ? RUNA : RUNB;
+                if (run < 2) break;
+            }
+        }
+        return k;
+    }
+
+    // inverse of zeroRunEncode, return the decoded length
+    static int zeroRunDecode(int[] in, int k, byte[] out) {
+        int m = 0;
+        for (int i = 0; i < k; ) {
+            if (in[i] > RUNB) {
+                out[m++] = (byte) (in[i++] - 1);
+                continue;
+            }
+            long run = 0;
+            for (long weight = 1; i < k && in[i] <= RUNB; weight <<= 1) {
+                run += in[i++] == RUNA ? weight : 2 * weight;
+                if (run > out.length - m) throw new IllegalArgumentException("corrupt block");
+            }
+            // out is zero-filled
+            m += (int) run;
+        }
+        return m;
+    }
+
+    // Huffman code symbols[0, k) in groups of GROUP_SIZE, each group with the
+    // cheapest of a few tables; the tables and the choices are refined iteratively
+    static byte[] huffmanEncode(int[] symbols, int k) {
+        int tables = k < 200 ? 2 : k < 600 ? 3 : k < 1200 ? 4 : k < 2400 ? 5 : MAX_TABLES;
+        int groups = (k + GROUP_SIZE - 1) / GROUP_SIZE;
+        int[] freq = new int[ALPHABET];
+        for (int i = 0; i < k; i++) freq[symbols[i]]++;
+
+        // start with tables that are cheap for disjoint ranges of symbols of about equal weight
+        int[][] length = new int[tables][ALPHABET];
+        for (int t = 0, lo = 0, remaining = k; t < tables; t++) {
+            int target = remaining / (tables - t), weight = 0, hi = lo;
+            while (hi < ALPHABET && (weight < target || hi == lo || t == tables - 1)) {
+                weight += freq[hi++];
+            }
+            for (int v = 0; v < ALPHABET; v++) length[t][v] = (v >= lo && v < hi) ? 0 : 15;
+            remaining -= weight;
+            lo = hi;
+        }
+
+        byte[] selectors = new byte[groups];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            int[][] tableFreq = new int[tables][ALPHABET];
+            for (int g = 0; g < groups; g++) {
+                int lo = g * GROUP_SIZE, hi = Math.min(k, lo + GROUP_SIZE);
+                int best = 0, bestCost = Integer.MAX_VALUE;
+                for (int t = 0; t < tables; t++) {
+                    int cost = 0;
+                    for (int i = lo; i < hi; i++) cost += length[t][symbols[i]];
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        best = t;
+                    }
+                }
+                selectors[g] = (byte) best;
+                for (int i = lo; i < hi; i++) tableFreq[best][symbols[i]]++;
+            }
+            // every table can code every symbol
+            for (int t = 0; t < tables; t++) {
+                for (int v = 0; v < ALPHABET; v++) tableFreq[t][v]++;
+                length[t] = BlockHuffman.codeLengths(tableFreq[t]);
+            }
+        }
+
+        BlockHuffman.BitWriter writer = new BlockHuffman.BitWriter(k + 1024);
+        writer.write(tables, 3);
+        // selectors: move-to-front, then unary
+        byte[] order = new byte[tables];
+        for (int t = 0; t < tables; t++) order[t] = (byte) t;
+        for (int g = 0; g < groups; g++) {
+            int j = 0;
+            while (order[j] != selectors[g]) j++;
+            System.arraycopy(order, 0, order, 1, j);
+            order[0] = selectors[g];
+            for (int i = 0; i < j; i++) writer.write(1, 1);
+            writer.write(0, 1);
+        }
+        // code lengths: the first in 5 bits, then deltas (10 = +1, 11 = -1, 0 = next symbol)
+        for (int t = 0; t < tables; t++) {
+            int curr = length[t][0];
+            writer.write(curr, 5);
+            for (int v = 0; v < ALPHABET; v++) {
+                for (; curr < length[t][v]; curr++) writer.write(2, 2);
+                for (; curr > length[t][v]; curr--) writer.write(3, 2);
+                writer.write(0, 1);
+            }
+        }
+        int[][] code = new int[tables][];
+        for (int t = 0; t < tables; t++) code[t] = BlockHuffman.canonicalCodes(length[t]);
+        for (int i = 0; i < k; i++) {
+            int t = selectors[i / GROUP_SIZE];
+            writer.write(code[t][symbols[i]], length[t][symbols[i]]);
+        }
+        return writer.toByteArray();
+    }
+
+    // upper bound on the length of huffmanEncode for k symbols: table count, unary
+    // selectors, delta-coded code lengths and codes of at most MAX_LENGTH bits
+    static long maxCodedLength(int k) {
+        long groups = (k + GROUP_SIZE - 1) / GROUP_SIZE;
+        long bits = 3 + groups * MAX_TABLES
+                + MAX_TABLES * (5 + ALPHABET * (2L * BlockHuffman.MAX_LENGTH + 1))
+                + (long) k * BlockHuffman.MAX_LENGTH;
+        return (bits + 7) / 8;
+    }
+
+    static int[] huffmanDecode(byte[] coded, int k) {
+        BlockHuffman.BitReader reader = new BlockHuffman.BitReader(coded);
+        int tables = reader.read(3);
+        if (tables < 2 || tables > MAX_TABLES) throw new IllegalArgumentException("corrupt block");
+        int groups = (k + GROUP_SIZE - 1) / GROUP_SIZE;
+        byte[] selectors = new byte[groups];
+        byte[] order = new byte[tables];
+        for (int t = 0; t < tables; t++) order[t] = (byte) t;
+        for (int g = 0; g < groups; g++) {
+            int j = 0;
+            while (reader.readBit() == 1) {
+                if (++j >= tables) throw new IllegalArgumentException("corrupt block");
+            }
+            byte t = order[j];
+            System.arraycopy(order, 0, order, 1, j);
+            order[0] = t;
+            selectors[g] = t;
+        }
+        BlockHuffman.Decoder[] decoders = new BlockHuffman.Decoder[tables];
+        for (int t = 0; t < tables; t++) {
+            int[] length = new int[ALPHABET];
+            int curr = reader.read(5);
+            for (int v = 0; v < ALPHABET; v++) {
+                while (reader.readBit() == 1) curr += reader.readBit() == 0 ? 1 : -1;
+                if (curr < 1 || curr > BlockHuffman.MAX_LENGTH)
+                    throw new IllegalArgumentException("corrupt block");
+                length[v] = curr;
+            }
+            decoders[t] = new BlockHuffman.Decoder(length);
+        }
+        int[] symbols = new int[k];
+        for (int i = 0; i < k; i++) {
+            symbols[i] = decoders[selectors[i / GROUP_SIZE]].decode(reader);
+        }
+        return symbols;
+    }
+
+    // fill block from in, return the number of bytes read (0 at end of input)
+    private static int readFully(InputStream in, byte[] block) throws IOException {
+        int n = 0;
+        while (n < block.length) {
+            int r = in.read(block, n, block.length - n);
+            if (r < 0) break;
+            n += r;
+        }
+        return n;
+    }
+
+    // time every stage of compression, and decompression as a whole, on each file
+    private static void benchmark(String[] files, int blockSize) throws IOException {
+        System.out.printf("%-16s %10s %10s %10s %10s %10s %10s %8s%n", "file", "rle MB/s",
+                "bwt MB/s", "mtf MB/s", "huff MB/s", "total MB/s", "unzip MB/s", "ratio");
+        for (String file : files) {
+            byte[] data = Files.readAllBytes(Paths.get(file));
+            long[] nanos = new long[4];
+            long coded = 0;
+            // run twice, keep the second (warm) measurement
+            for (int round = 0; round < 2; round++) {
+                nanos = new long[4];
+                coded = 0;
+                for (int pos = 0; pos < data.length; pos += blockSize) {
+                    int n = Math.min(blockSize, data.length - pos);
+                    byte[] block = Arrays.copyOfRange(data, pos, pos + n);
+                    long t0 = System.nanoTime();
+                    byte[] runs = new byte[n + n / RUN_START + 1];
+                    int m = runLengthEncode(block, n, runs);
+                    long t1 = System.nanoTime();
+                    byte[] last = new byte[m];
+                    BurrowsWheeler.transform(runs, m, last, new int[BurrowsWheeler.STREAMS]);
+                    long t2 = System.nanoTime();
+                    MoveToFront.encode(last, m, last);
+                    int[] symbols = new int[m];
+                    int k = zeroRunEncode(last, m, symbols);
+                    long t3 = System.nanoTime();
+                    coded += huffmanEncode(symbols, k).length;
+                    long t4 = System.nanoTime();
+                    nanos[0] += t1 - t0;
+                    nanos[1] += t2 - t1;
+                    nanos[2] += t3 - t2;
+                    nanos[3] += t4 - t3;
+                }
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            new Compressor(blockSize).compress(new ByteArrayInputStream(data), compressed);
+            long t = System.nanoTime();
+            decompress(new ByteArrayInputStream(compressed.toByteArray()), new ByteArrayOutputStream());
+            long unzip = System.nanoTime() - t;
+            long total = nanos[0] + nanos[1] + nanos[2] + nanos[3];
+            String name = Paths.get(file).getFileName().toString();
+            System.out.printf("%-16s %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f %8.3f%n", name,
+                    mbps(data.length, nanos[0]), mbps(data.length, nanos[1]), mbps(data.length, nanos[2]),
+                    mbps(data.length, nanos[3]), mbps(data.length, total), mbps(data.length, unzip),
+                    (double) compressed.size() / data.length);
+        }
+    }
+
+    // round trip blocks of MAX_BLOCK_SIZE bytes, among them runs of exactly RUN_START
+    // bytes, which the run-length stage makes longer by a quarter
+    private static void check() throws IOException {
+        int n = BurrowsWheeler.MAX_BLOCK_SIZE;
+        byte[][] inputs = new byte[2][n];
+        for (int i = 0; i < n; i++) inputs[0][i] = (byte) ((i / RUN_START) % 2 == 0 ? 'a' : 'b');
+        new Random(1).nextBytes(inputs[1]);
+        for (byte[] data : inputs) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            new Compressor(n).compress(new ByteArrayInputStream(data), compressed);
+            ByteArrayOutputStream expanded = new ByteArrayOutputStream(n);
+            decompress(new ByteArrayInputStream(compressed.toByteArray()), expanded);
+            if (!Arrays.equals(data, expanded.toByteArray())) throw new IllegalStateException("round trip failed");
+            System.out.println(n + " bytes -> " + compressed.size() + " bytes, round trip ok");
+        }
+    }
+
+    private static double mbps(long bytes, long nanos) {
+        return bytes / 1e6 / (nanos / 1e9);
+    }
+
+    // if args[0] is "compress", compress standard input to standard output, args[1] is the optional block size
+    // if args[0] is "decompress", decompress standard input to standard output
+    // if args[0] is "bench", benchmark every stage on the files args[1..] (e.g. the Canterbury corpus)
+    // if args[0] is "check", round trip blocks of the maximum block size
+    public static void main(String[] args) throws IOException {
+        InputStream in = new BufferedInputStream(System.in, 1 << 16);
+        OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+        if ("compress".equals(args[0])) {
+            int blockSize = args.length > 1 ? Integer.parseInt(args[1]) : BurrowsWheeler.DEFAULT_BLOCK_SIZE;
+            new Compressor(blockSize).compress(in, out);
+        } else if ("decompress".equals(args[0])) {
+            decompress(in, out);
+        } else if ("bench".equals(args[0])) {
+            benchmark(Arrays.copyOfRange(args, 1, args.length), BurrowsWheeler.DEFAULT_BLOCK_SIZE);
+        } else if ("check".equals(args[0])) {
+            check();
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,362 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * FM-index over one Burrows-Wheeler transformed block: counts and locates
+ * occurrences of a pattern using only the last column, rank checkpoints and
+ * sampled suffix array entries, without inverting the transform.
+ *
+ * The transform is circular, so matches that wrap from the end of the block
+ * back to its start are not reported.
+ *
+ * Size per text byte: 1 for the last column, 2 sigma / 256 for the rank counts of
+ * the sigma symbols that occur, and 0.14 for the samples; 1.9 for sigma = 100,
+ * 3.1 for binary data. "FMIndex -w" writes the indexes of a transformed file, so
+ * that queries load them instead of walking every block again.
+ */
+public class FMIndex {
+
+    private static final int R = 256;
+    // rows between rank checkpoints, and between absolute (int) checkpoints; the
+    // counts in between are relative to the last absolute one and fit in a char
+    private static final int RANK_RATE = 256;
+    private static final int SUPER_RATE = 1 << 16;
+    // text positions between suffix array samples
+    private static final int SAMPLE_RATE = 32;
+
+    // index file: magic, version, then one index per block
+    private static final byte[] MAGIC = {'F', 'M', 'I'};
+    private static final int VERSION = 1;
+
+    private final int n;
+    private final int start;
+    // length of the primitive root of the text, n if the text is not periodic
+    private final int period;
+    private final byte[] last;
+    // first row of every symbol in the sorted first column
+    private final int[] first;
+    // rank(c, i) is superCount[(i / SUPER_RATE) * sigma + d] + blockCount[(i / RANK_RATE) * sigma + d]
+    // plus the c in last[i / RANK_RATE * RANK_RATE, i), where d = symbol[c] numbers the
+    // sigma symbols that occur; about 2 sigma / RANK_RATE bytes per row, at most 2
+    private final int sigma;
+    private final int[] symbol;
+    private final int[] superCount;
+    private final char[] blockCount;
+    // rows whose rotation starts at a multiple of SAMPLE_RATE, with a rank per word
+    private final long[] sampled;
+    private final int[] sampledRank;
+    // text position of every sampled row, in row order
+    private final int[] positions;
+
+    // index the last column last[0, n) of a block whose original text is in row start
+    public FMIndex(byte[] last, int n, int start) {
+        if (last == null || n < 0 || n > last.length) throw new IllegalArgumentException();
+        if (n > 0 && (start < 0 || start >= n)) throw new IllegalArgumentException();
+        this.n = n;
+        this.start = start;
+        this.last = Arrays.copyOf(last, n);
+
+        int[] count = counts(this.last);
+        first = firstRows(count);
+        symbol = symbols(count);
+        sigma = sigma(symbol);
+        superCount = new int[(n / SUPER_RATE + 1) * sigma];
+        blockCount = new char[(n / RANK_RATE + 1) * sigma];
+        int[] dense = new int[sigma];
+        int[] base = new int[sigma];
+        for (int i = 0; i <= n; i++) {
+            if (i % SUPER_RATE == 0) {
+                System.arraycopy(dense, 0, superCount, i / SUPER_RATE * sigma, sigma);
+                System.arraycopy(dense, 0, base, 0, sigma);
+            }
+            if (i % RANK_RATE == 0) {
+                for (int k = 0; k < sigma; k++) blockCount[i / RANK_RATE * sigma + k] = (char) (dense[k] - base[k]);
+            }
+            if (i < n) dense[symbol[this.last[i] & 0xff]]++;
+        }
+
+        // LF of every row, only needed while sampling
+        int[] lf = new int[n];
+        int[] seen = new int[R];
+        for (int i = 0; i < n; i++) {
+            int c = this.last[i] & 0xff;
+            lf[i] = first[c] + seen[c]++;
+        }
+
+        // a text made of k copies of a primitive string of length p splits LF into
+        // k cycles of p rows, the one through start has no other rows
+        int p = n == 0 ? 0 : 1;
+        for (int row = n == 0 ? 0 : lf[start]; n > 0 && row != start; row = lf[row]) p++;
+        period = p;
+
+        sampled = new long[(n + 63) / 64];
+        sampledRank = new int[sampled.length + 1];
+        sample(lf, null);
+        for (int w = 0; w < sampled.length; w++) {
+            sampledRank[w + 1] = sampledRank[w] + Long.bitCount(sampled[w]);
+        }
+        positions = new int[sampledRank[sampled.length]];
+        sample(lf, positions);
+    }
+
+    // read an index written by write(); the sizes are checked, the contents trusted
+    private FMIndex(DataInputStream in) throws IOException {
+        n = in.readInt();
+        start = in.readInt();
+        period = in.readInt();
+        if (n < 0 || n > BurrowsWheeler.MAX_BLOCK_SIZE || n > 0 && (start < 0 || start >= n
+                || period <= 0 || period > n || n % period != 0))
+            throw new IOException("corrupt index");
+        last = new byte[n];
+        in.readFully(last);
+        int[] count = counts(last);
+        first = firstRows(count);
+        symbol = symbols(count);
+        sigma = sigma(symbol);
+        superCount = new int[(n / SUPER_RATE + 1) * sigma];
+        for (int i = 0; i < superCount.length; i++) superCount[i] = in.readInt();
+        blockCount = new char[(n / RANK_RATE + 1) * sigma];
+        for (int i = 0; i < blockCount.length; i++) blockCount[i] = in.readChar();
+        sampled = new long[(n + 63) / 64];
+        sampledRank = new int[sampled.length + 1];
+        for (int w = 0; w < sampled.length; w++) {
+            sampled[w] = in.readLong();
+            sampledRank[w + 1] = sampledRank[w] + Long.bitCount(sampled[w]);
+        }
+        positions = new int[sampledRank[sampled.length]];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.readInt();
+            if (positions[i] < 0 || positions[i] >= n) throw new IOException("corrupt index");
+        }
+    }
+
+    // write the index, so that read() does not have to walk the LF cycles again
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(n);
+        out.writeInt(start);
+        out.writeInt(period);
+        out.write(last);
+        for (int x : superCount) out.writeInt(x);
+        for (char x : blockCount) out.writeChar(x);
+        for (long x : sampled) out.writeLong(x);
+        for (int x : positions) out.writeInt(x);
+    }
+
+    private static int[] counts(byte[] last) {
+        int[] count = new int[R];
+        for (byte b : last) count[b & 0xff]++;
+        return count;
+    }
+
+    private static int[] firstRows(int[] count) {
+        int[] first = new int[R + 1];
+        for (int c = 0; c < R; c++) first[c + 1] = first[c] + count[c];
+        return first;
+    }
+
+    // number of every symbol among those that occur, -1 for the others
+    private static int[] symbols(int[] count) {
+        int[] symbol = new int[R];
+        for (int c = 0, d = 0; c < R; c++) symbol[c] = count[c] > 0 ? d++ : -1;
+        return symbol;
+    }
+
+    private static int sigma(int[] symbol) {
+        int res = 0;
+        for (int d : symbol) res = Math.max(res, d + 1);
+        return res;
+    }
+
+    // walk every LF cycle backwards through the text, marking the sampled rows,
+    // or storing their positions if positions is not null. Cycle j starts at the
+    // row of the rotation at j * period: CircularSuffixArray lists equal rotations
+    // in ascending order, so that is row start + j. The last row of each cycle is
+    // also sampled, so that position() never walks across the end of a cycle
+    private void sample(int[] lf, int[] positions) {
+        for (int j = 0; period > 0 && j < n / period; j++) {
+            for (int t = 0, row = start + j, pos = j * period; t < period; t++) {
+                if (pos % SAMPLE_RATE == 0 || t == period - 1) {
+                    if (positions == null) sampled[row >>> 6] |= 1L << (row & 63);
+                    else positions[sampleIndex(row)] = pos;
+                }
+                row = lf[row];
+                pos = pos == 0 ? n - 1 : pos - 1;
+            }
+        }
+    }
+
+    // length of the indexed block
+    public int length() {
+        return n;
+    }
+
+    // number of occurrences of pattern, encoded as UTF-8
+    public int count(String pattern) {
+        if (pattern == null) throw new IllegalArgumentException();
+        return count(pattern.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // number of occurrences of the byte string pattern
+    public int count(byte[] pattern) {
+        int[] range = range(pattern);
+        if (range == null) return 0;
+        int m = pattern.length;
+        // the rows of the rotations starting in the last m - 1 positions are the
+        // only ones whose prefix wraps around; walk to them from the start row,
+        // moving to the next cycle at every multiple of the period
+        int wrapped = 0;
+        for (int j = 1, row = start; j < m; j++) {
+            row = j % period == 0 ? start + n / period - j / period : lf(row);
+            if (row >= range[0] && row < range[1]) wrapped++;
+        }
+        return range[1] - range[0] - wrapped;
+    }
+
+    // positions of all occurrences of pattern, encoded as UTF-8, in ascending order
+    public int[] locate(String pattern) {
+        if (pattern == null) throw new IllegalArgumentException();
+        return locate(pattern.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // positions of all occurrences of the byte string pattern, in ascending order
+    public int[] locate(byte[] pattern) {
+        int[] range = range(pattern);
+        if (range == null) return new int[0];
+        int m = pattern.length;
+        int[] res = new int[range[1] - range[0]];
+        int k = 0;
+        for (int row = range[0]; row < range[1]; row++) {
+            int pos = position(row);
+            if (pos + m <= n) res[k++] = pos;
+        }
+        res = Arrays.copyOf(res, k);
+        Arrays.sort(res);
+        return res;
+    }
+
+    // rows [lo, hi) whose rotation starts with pattern, or null if there are none
+    private int[] range(byte[] pattern) {
+        if (pattern == null) throw new IllegalArgumentException();
+        int m = pattern.length;
+        if (m == 0 || m > n) return null;
+        int lo = 0, hi = n;
+        // backward search
+        for (int j = m - 1; j >= 0; j--) {
+            int c = pattern[j] & 0xff;
+            lo = first[c] + rank(c, lo);
+            hi = first[c] + rank(c, hi);
+            if (lo >= hi) return null;
+        }
+        return new int[] {lo, hi};
+    }
+
+    // text position where the rotation in row starts
+    private int position(int row) {
+        int steps = 0;
+        while ((sampled[row >>> 6] & (1L << (row & 63))) == 0) {
+            row = lf(row);
+            steps++;
+        }
+        int pos = positions[sampleIndex(row)] + steps;
+        return pos >= n ? pos - n : pos;
+    }
+
+    // row of the rotation starting one position earlier
+    private int lf(int row) {
+        int c = last[row] & 0xff;
+        return first[c] + rank(c, row);
+    }
+
+    // number of c in last[0, i)
+    private int rank(int c, int i) {
+        int d = symbol[c];
+        if (d < 0) return 0;
+        int block = i / RANK_RATE;
+        int res = superCount[i / SUPER_RATE * sigma + d] + blockCount[block * sigma + d];
+        byte b = (byte) c;
+        for (int j = block * RANK_RATE; j < i; j++) {
+            if (last[j] == b) res++;
+        }
+        return res;
+    }
+
+    private int sampleIndex(int row) {
+        long below = sampled[row >>> 6] & ((1L << (row & 63)) - 1);
+        return sampledRank[row >>> 6] + Long.bitCount(below);
+    }
+
+    // the indexes of the blocks in a file written by "BurrowsWheeler -b" or "-f",
+    // or read back from a file written by "FMIndex -w"
+    private static ArrayList<FMIndex> load(String file) throws IOException {
+        ArrayList<FMIndex> blocks = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            in.mark(MAGIC.length);
+            byte[] magic = new byte[MAGIC.length];
+            // a transformed file starts with a block length below 2^26, never with 'F'
+            if (in.read(magic) == MAGIC.length && Arrays.equals(magic, MAGIC)) {
+                if (in.readUnsignedByte() != VERSION) throw new IOException("unsupported version");
+                for (int k = in.readInt(); k > 0; k--) blocks.add(new FMIndex(in));
+                return blocks;
+            }
+            in.reset();
+            int[] checkpoints = new int[BurrowsWheeler.STREAMS];
+            while (true) {
+                int n;
+                try {
+                    n = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                for (int s = 0; s < checkpoints.length; s++) checkpoints[s] = in.readInt();
+                if (BurrowsWheeler.badFrame(n, checkpoints)) throw new IOException("corrupt frame");
+                byte[] last = new byte[n];
+                in.readFully(last);
+                blocks.add(new FMIndex(last, n, checkpoints[0]));
+            }
+        }
+        return blocks;
+    }
+
+    // if args[0] is "-w", index the transformed file args[1] and write the index to args[2]
+    // otherwise args[0] is a transformed file or an index, print the number of occurrences
+    // and the offsets of each pattern args[1..], as UTF-8
+    public static void main(String[] args) throws IOException {
+        if ("-w".equals(args[0])) {
+            ArrayList<FMIndex> blocks = load(args[1]);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[2]), 1 << 16))) {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(blocks.size());
+                for (FMIndex index : blocks) index.write(out);
+            }
+            return;
+        }
+        long t0 = System.nanoTime();
+        ArrayList<FMIndex> blocks = load(args[0]);
+        System.out.printf("loaded %d blocks (%.1f ms)%n", blocks.size(), (System.nanoTime() - t0) / 1e6);
+        for (int i = 1; i < args.length; i++) {
+            byte[] pattern = args[i].getBytes(StandardCharsets.UTF_8);
+            long t = System.nanoTime();
+            int count = 0;
+            StringBuilder offsets = new StringBuilder();
+            long offset = 0;
+            for (FMIndex index : blocks) {
+                count += index.count(pattern);
+                for (int pos : index.locate(pattern)) {
+                    if (offsets.length() < 200) offsets.append(' ').append(offset + pos);
+                }
+                offset += index.length();
+            }
+            System.out.printf("%s: %d (%.3f ms)%s%n", args[i], count, (System.nanoTime() - t) / 1e6, offsets);
+        }
+    }
+}
@@ -1,49 +1,133 @@
 import edu.princeton.cs.algs4.BinaryStdIn;
 import edu.princeton.cs.algs4.BinaryStdOut;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class MoveToFront {
 
+    private static final int R = 256;
+    // bytes of input mapped at a time by the file codecs
+    private static final int WINDOW = 1 << 26;
+
     // apply move-to-front encoding, reading from standard input and writing to standard output
     public static void encode() {
-        LinkedList<Character> alphabet = getAlphabet();
+        byte[] alphabet = getAlphabet();
+        int[] position = getAlphabetPositions();
         while (!BinaryStdIn.isEmpty()) {
             char c = BinaryStdIn.readChar();
             // if (c == '\n') continue;
-            int index = alphabet.indexOf(c);
-            alphabet.remove(index);
-            alphabet.addFirst(c);
-            BinaryStdOut.write(index, 8);
+            BinaryStdOut.write(moveToFront(alphabet, position, c), 8);
         }
         BinaryStdOut.close();
     }
 
     // apply move-to-front decoding, reading from standard input and writing to standard output
     public static void decode() {
-        LinkedList<Character> alphabet = getAlphabet();
+        byte[] alphabet = getAlphabet();
         while (!BinaryStdIn.isEmpty()) {
             int index = BinaryStdIn.readChar();
-            char c = alphabet.remove(index);
-            alphabet.addFirst(c);
-            BinaryStdOut.write(c);
+            BinaryStdOut.write(moveToFront(alphabet, index));
         }
         BinaryStdOut.close();
     }
 
-    private static LinkedList<Character> getAlphabet() {
-        LinkedList<Character> alphabet = new LinkedList<>();
-        for (char c = 0; c < 256; c++) alphabet.add(c);
+    // move-to-front encode in[0, n) into out[0, n), out may be in
+    public static void encode(byte[] in, int n, byte[] out) {
+        byte[] alphabet = getAlphabet();
+        int[] position = getAlphabetPositions();
+        for (int i = 0; i < n; i++) {
+            out[i] = (byte) moveToFront(alphabet, position, in[i] & 0xff);
+        }
+    }
+
+    // move-to-front decode in[0, n) into out[0, n), out may be in
+    public static void decode(byte[] in, int n, byte[] out) {
+        byte[] alphabet = getAlphabet();
+        for (int i = 0; i < n; i++) {
+            out[i] = (byte) moveToFront(alphabet, in[i] & 0xff);
+        }
+    }
+
+    // apply move-to-front encoding from inFile to outFile through a memory mapping of the input
+    public static void encode(String inFile, String outFile) throws IOException {
+        byte[] alphabet = getAlphabet();
+        int[] position = getAlphabetPositions();
+        try (FileChannel in = FileChannel.open(Paths.get(inFile), StandardOpenOption.READ);
+             ChannelWriter out = new ChannelWriter(outFile)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos));
+                while (buffer.hasRemaining()) {
+                    out.put((byte) moveToFront(alphabet, position, buffer.get() & 0xff));
+                }
+            }
+        }
+    }
+
+    // apply move-to-front decoding from inFile to outFile through a memory mapping of the input
+    public static void decode(String inFile, String outFile) throws IOException {
+        byte[] alphabet = getAlphabet();
+        try (FileChannel in = FileChannel.open(Paths.get(inFile), StandardOpenOption.READ);
+             ChannelWriter out = new ChannelWriter(outFile)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos));
+                while (buffer.hasRemaining()) {
+                    out.put((byte) moveToFront(alphabet, buffer.get() & 0xff));
+                }
+            }
+        }
+    }
+
+    // move c to the front, return its previous index
+    private static int moveToFront(byte[] alphabet, int[] position, int c) {
+        int index = position[c];
+        if (index == 0) return 0;
+        System.arraycopy(alphabet, 0, alphabet, 1, index);
+        alphabet[0] = (byte) c;
+        // only the symbols that were shifted changed position
+        for (int i = 1; i <= index; i++) position[alphabet[i] & 0xff] = i;
+        position[c] = 0;
+        return index;
+    }
+
+    // move the symbol at index to the front, return it
+    private static char moveToFront(byte[] alphabet, int index) {
+        byte c = alphabet[index];
+        System.arraycopy(alphabet, 0, alphabet, 1, index);
+        alphabet[0] = c;
+        return (char) (c & 0xff);
+    }
+
+    private static byte[] getAlphabet() {
+        byte[] alphabet = new byte[R];
+        for (int c = 0; c < R; c++) alphabet[c] = (byte) c;
         return alphabet;
     }
 
+    // inverse of the alphabet: position[c] is the index of symbol c
+    private static int[] getAlphabetPositions() {
+        int[] position = new int[R];
+        for (int c = 0; c < R; c++) position[c] = c;
+        return position;
+    }
+
     // if args[0] is "-", apply move-to-front encoding
     // if args[0] is "+", apply move-to-front decoding
-    public static void main(String[] args) {
+    // if args[0] is "-f" or "+f", encode or decode file args[1] into file args[2]
+    public static void main(String[] args) throws IOException {
         if ("-".equals(args[0])) {
             encode();
         } else if ("+".equals(args[0])) {
             decode();
+        } else if ("-f".equals(args[0])) {
+            encode(args[1], args[2]);
+        } else if ("+f".equals(args[0])) {
+            decode(args[1], args[2]);
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,190 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Burrows-Wheeler transform, move-to-front and Huffman coding run on independent
+ * blocks in a thread pool. The reader keeps at most 2 blocks per thread in flight
+ * and the writer emits them in input order.
+ *
+ * Each frame is: int length, BurrowsWheeler.STREAMS ints of checkpoint rows (the first
+ * is start), int compressed length, compressed bytes.
+ */
+public class ParallelCompressor {
+
+    private final int blockSize;
+    private final int threads;
+
+    public ParallelCompressor(int blockSize, int threads) {
+        if (blockSize < BurrowsWheeler.MIN_BLOCK_SIZE || blockSize > BurrowsWheeler.MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException();
+        if (threads <= 0) throw new IllegalArgumentException();
+        this.blockSize = blockSize;
+        this.threads = threads;
+    }
+
+    public void compress(InputStream in, OutputStream out) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+            DataOutputStream writer = new DataOutputStream(out);
+            while (true) {
+                byte[] block = new byte[blockSize];
+                int n = readFully(in, block);
+                if (n == 0) break;
+                pending.add(pool.submit(() -> compressBlock(block, n)));
+                if (pending.size() >= 2 * threads) writer.write(take(pending));
+            }
+            while (!pending.isEmpty()) writer.write(take(pending));
+            writer.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void expand(InputStream in, OutputStream out) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+            DataInputStream reader = new DataInputStream(in);
+            while (true) {
+                int n;
+                try {
+                    n = reader.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int[] checkpoints = new int[BurrowsWheeler.STREAMS];
+                for (int s = 0; s < checkpoints.length; s++) checkpoints[s] = reader.readInt();
+                int length = reader.readInt();
+                if (BurrowsWheeler.badFrame(n, checkpoints)
+                        || length < 0 || length > BlockHuffman.maxCompressedLength(n))
+                    throw new IOException("corrupt frame");
+                byte[] compressed = new byte[length];
+                reader.readFully(compressed);
+                pending.add(pool.submit(() -> expandBlock(compressed, n, checkpoints)));
+                if (pending.size() >= 2 * threads) out.write(take(pending));
+            }
+            while (!pending.isEmpty()) out.write(take(pending));
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // one complete frame for block[0, n)
+    static byte[] compressBlock(byte[] block, int n) {
+        byte[] last = new byte[n];
+        int[] checkpoints = new int[BurrowsWheeler.STREAMS];
+        BurrowsWheeler.transform(block, n, last, checkpoints);
+        // encode in place, the last column is not needed afterwards
+        MoveToFront.encode(last, n, last);
+        byte[] compressed = BlockHuffman.compress(last, n);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(compressed.length + 4 * (checkpoints.length + 2));
+        DataOutputStream out = new DataOutputStream(frame);
+        try {
+            out.writeInt(n);
+            for (int row : checkpoints) out.writeInt(row);
+            out.writeInt(compressed.length);
+            out.write(compressed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return frame.toByteArray();
+    }
+
+    static byte[] expandBlock(byte[] compressed, int n, int[] checkpoints) {
+        byte[] last = new byte[n];
+        BlockHuffman.expand(compressed, n, last);
+        MoveToFront.decode(last, n, last);
+        byte[] out = new byte[n];
+        BurrowsWheeler.inverseTransform(last, n, checkpoints, out);
+        return out;
+    }
+
+    private static byte[] take(ArrayDeque<Future<byte[]>> pending) throws IOException {
+        try {
+            return pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // fill block from in, return the number of bytes read (0 at end of input)
+    private static int readFully(InputStream in, byte[] block) throws IOException {
+        int n = 0;
+        while (n < block.length) {
+            int r = in.read(block, n, block.length - n);
+            if (r < 0) break;
+            n += r;
+        }
+        return n;
+    }
+
+    // compress the file with 1, 2, 4, ... threads and report throughput
+    private static void benchmark(String file, int blockSize) throws IOException {
+        byte[] data = Files.readAllBytes(Paths.get(file));
+        int max = Runtime.getRuntime().availableProcessors();
+        double base = 0;
+        for (int threads = 1; ; threads = Math.min(2 * threads, max)) {
+            ParallelCompressor compressor = new ParallelCompressor(blockSize, threads);
+            // warm up once, then time the best of 3
+            compressor.compress(new ByteArrayInputStream(data), new ByteArrayOutputStream());
+            long best = Long.MAX_VALUE;
+            int size = 0;
+            for (int i = 0; i < 3; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                long t = System.nanoTime();
+                compressor.compress(new ByteArrayInputStream(data), out);
+                best = Math.min(best, System.nanoTime() - t);
+                size = out.size();
+            }
+            double mbps = data.length / 1e6 / (best / 1e9);
+            if (threads == 1) base = mbps;
+            System.out.printf("threads %2d  %8.2f MB/s  speedup %5.2f  ratio %.3f%n",
+                    threads, mbps, mbps / base, (double) size / data.length);
+            if (threads == max) break;
+        }
+    }
+
+    // if args[0] is "-", compress standard input to standard output
+    // if args[0] is "+", expand standard input to standard output
+    // if args[0] is "bench", benchmark args[1] with 1 thread up to all cores
+    // args[1] (args[2] for bench) is the optional block size
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if ("bench".equals(args[0])) {
+            int blockSize = args.length > 2 ? Integer.parseInt(args[2]) : BurrowsWheeler.DEFAULT_BLOCK_SIZE;
+            benchmark(args[1], blockSize);
+            return;
+        }
+        int blockSize = args.length > 1 ? Integer.parseInt(args[1]) : BurrowsWheeler.DEFAULT_BLOCK_SIZE;
+        ParallelCompressor compressor = new ParallelCompressor(blockSize, threads);
+        InputStream in = new BufferedInputStream(System.in, 1 << 16);
+        OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+        if ("-".equals(args[0])) {
+            compressor.compress(in, out);
+        } else if ("+".equals(args[0])) {
+            compressor.expand(in, out);
+        }
+        out.flush();
+    }
+}
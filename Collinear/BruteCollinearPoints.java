@@ -1,5 +1,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
 
 /**
  * Please note: For simplicity, we will not supply any input to BruteCollinearPoints
@@ -10,23 +12,30 @@ public class BruteCollinearPoints {
 
     private final LineSegment[] res;
 
-    // finds all line segments containing 4 points
+    // finds all line segments containing 4 points, with exact slope comparisons
     public BruteCollinearPoints(Point[] points) {
+        this(points, true);
+    }
+
+    // finds all line segments containing 4 points; exact compares slopes with
+    // Point.sameSlope(), otherwise slopeTo() doubles are compared with ==, which is
+    // only exact for coordinates in [0, 32767]
+    public BruteCollinearPoints(Point[] points, boolean exact) {
         if (points == null) throw new IllegalArgumentException();
         Point[] input = points.clone();
         checkInput(input);
-        res = findLine(input);
+        res = findLine(input, exact);
     }
 
-    private LineSegment[] findLine(Point[] points) {
+    private LineSegment[] findLine(Point[] points, boolean exact) {
         ArrayList<LineSegment> buffer = new ArrayList<>();
         int n = points.length;
         for (int i = 0; i < n - 3; i++) {
             for (int j = i + 1; j < n - 2; j++) {
                 for (int k = j + 1; k < n - 1; k++) {
+                    if (!collinear(points[i], points[j], points[k], exact)) continue;
                     for (int l = k + 1; l < n; l++) {
-                        if (points[i].slopeTo(points[j]) == points[j].slopeTo(points[k]) &&
-                                points[j].slopeTo(points[k]) == points[k].slopeTo(points[l])) {
+                        if (collinear(points[i], points[j], points[l], exact)) {
                             buffer.add(new LineSegment(points[i], points[l]));
                         }
                     }
@@ -36,6 +45,10 @@ public class BruteCollinearPoints {
         return buffer.toArray(new LineSegment[0]);
     }
 
+    private static boolean collinear(Point p, Point q, Point r, boolean exact) {
+        return exact ? p.sameSlope(q, r) : p.slopeTo(q) == p.slopeTo(r);
+    }
+
     // the number of line segments
     public int numberOfSegments() {
         return res.length;
@@ -63,7 +76,30 @@ public class BruteCollinearPoints {
         }
     }
 
+    // time both modes on n random points with course-range coordinates
+    private static void bench(int n) {
+        Random random = new Random(1);
+        HashSet<Long> seen = new HashSet<>();
+        Point[] points = new Point[n];
+        for (int i = 0; i < n; ) {
+            int x = random.nextInt(32768), y = random.nextInt(32768);
+            if (seen.add((long) x << 32 | y)) points[i++] = new Point(x, y);
+        }
+        for (int rep = 0; rep < 3; rep++) {
+            for (boolean exact : new boolean[] {false, true}) {
+                long start = System.nanoTime();
+                int segments = new BruteCollinearPoints(points, exact).numberOfSegments();
+                System.out.printf("%-6s %d segments in %.3f s%n", exact ? "exact" : "double", segments,
+                        (System.nanoTime() - start) / 1e9);
+            }
+        }
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench(args.length > 1 ? Integer.parseInt(args[1]) : 200);
+            return;
+        }
         int[] arr = {19000, 10000, 18000, 10000};
         Point[] points = new Point[arr.length / 2];
         for (int i = 0, j = 0; i < points.length; i++, j += 2) {
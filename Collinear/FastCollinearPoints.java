@@ -2,17 +2,216 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class FastCollinearPoints {
 
+    // SORT: sort all points by slope around each point, then remove duplicated segments;
+    // HASH: group the points after each point by exact slope key in a hash table;
+    // PARALLEL: HASH with the points split over a fork/join pool
+    public enum Engine { SORT, HASH, PARALLEL }
+
+    // points handled by one parallel task
+    private static final int LEAF_POINTS = 32;
+
     private final LineSegment[] res;
 
     // finds all line segments containing 4 or more points
     public FastCollinearPoints(Point[] points) {
-        if (points == null) throw new IllegalArgumentException();
+        this(points, Engine.HASH);
+    }
+
+    // finds all line segments containing 4 or more points with the given engine,
+    // PARALLEL runs on the common pool
+    public FastCollinearPoints(Point[] points, Engine engine) {
+        this(points, engine, ForkJoinPool.commonPool());
+    }
+
+    // finds all line segments containing 4 or more points in parallel on the given pool
+    public FastCollinearPoints(Point[] points, ForkJoinPool pool) {
+        this(points, Engine.PARALLEL, pool);
+    }
+
+    private FastCollinearPoints(Point[] points, Engine engine, ForkJoinPool pool) {
+        if (points == null || engine == null || pool == null) throw new IllegalArgumentException();
         Point[] input = points.clone();
         checkInput(input);
-        res = findLine(input);
+        if (engine == Engine.SORT) res = findLine(input);
+        else if (engine == Engine.HASH) res = hashLines(input);
+        else res = parallelLines(input, pool);
+    }
+
+    // points is sorted. A segment is found from its first point only: around points[i],
+    // the points after it are counted by slope key, and 3 or more of them with the same
+    // key make a segment ending at the last of them, unless an earlier point already
+    // found that segment, which then marked the key as covered at all its other points.
+    // Segments come out in the order of SORT: by first point, then by last point
+    private static LineSegment[] hashLines(Point[] points) {
+        int n = points.length;
+        SlopeTable table = new SlopeTable(n);
+        long[][] covered = new long[n][];
+        int[] coveredCount = new int[n];
+        ArrayList<LineSegment> buffer = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            table.clear();
+            boolean found = false;
+            for (int j = i + 1; j < n; j++) {
+                long key = points[i].slopeKey(points[j]);
+                if (key != Point.NO_KEY && table.add(key, j) >= 3) found = true;
+            }
+            if (!found) continue;
+            for (int j = i + 1; j < n; j++) {
+                long key = points[i].slopeKey(points[j]);
+                int slot = key == Point.NO_KEY ? -1 : table.find(key);
+                if (slot < 0 || table.count[slot] < 3 || contains(covered[i], coveredCount[i], key)) continue;
+                if (covered[j] == null || coveredCount[j] == covered[j].length) {
+                    covered[j] = covered[j] == null ? new long[2] : Arrays.copyOf(covered[j], 2 * coveredCount[j]);
+                }
+                covered[j][coveredCount[j]++] = key;
+                if (table.last[slot] == j) buffer.add(new LineSegment(points[i], points[j]));
+            }
+        }
+        return buffer.toArray(new LineSegment[0]);
+    }
+
+    // points is sorted. Unlike hashLines(), every point reports each group of 3 or more
+    // later points with the same key, because the covered marks would order the points.
+    // Those are the segment and its tails, which all end at the same point with the same
+    // key; sorting by (last point, key, first point) and keeping the first of every
+    // (last point, key) leaves the segments, then they are sorted as in SORT. Both sorts
+    // are deterministic, so the result does not depend on the number of threads
+    private static LineSegment[] parallelLines(Point[] points, ForkJoinPool pool) {
+        int n = points.length;
+        Found[] found = pool.invoke(new LineTask(points, 0, n)).toArray(new Found[0]);
+        Arrays.parallelSort(found, Comparator.<Found>comparingInt(f -> f.last)
+                .thenComparingLong(f -> f.key).thenComparingInt(f -> f.first));
+        int k = 0;
+        for (int i = 0; i < found.length; i++) {
+            if (k == 0 || found[k - 1].last != found[i].last || found[k - 1].key != found[i].key) found[k++] = found[i];
+        }
+        found = Arrays.copyOf(found, k);
+        Arrays.parallelSort(found, Comparator.<Found>comparingInt(f -> f.first).thenComparingInt(f -> f.last));
+        LineSegment[] res = new LineSegment[k];
+        for (int i = 0; i < k; i++) res[i] = new LineSegment(points[found[i].first], points[found[i].last]);
+        return res;
+    }
+
+    // groups of 3 or more points after points[first] with the same key, ending at points[last]
+    private static class Found {
+
+        final int first, last;
+        final long key;
+
+        Found(int first, int last, long key) {
+            this.first = first;
+            this.last = last;
+            this.key = key;
+        }
+    }
+
+    private static class LineTask extends RecursiveTask<List<Found>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Point[] points;
+        private final int lo, hi;
+
+        LineTask(Point[] points, int lo, int hi) {
+            this.points = points;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected List<Found> compute() {
+            if (hi - lo > LEAF_POINTS) {
+                int mid = (lo + hi) >>> 1;
+                LineTask right = new LineTask(points, mid, hi);
+                right.fork();
+                List<Found> res = new LineTask(points, lo, mid).compute();
+                res.addAll(right.join());
+                return res;
+            }
+            List<Found> res = new ArrayList<>();
+            int n = points.length;
+            // a leaf's own table, O(n) against the O(LEAF_POINTS * n) pairs it scans,
+            // and garbage as soon as the leaf is done
+            SlopeTable table = new SlopeTable(n - lo);
+            for (int i = lo; i < hi; i++) {
+                table.clear();
+                boolean found = false;
+                for (int j = i + 1; j < n; j++) {
+                    long key = points[i].slopeKey(points[j]);
+                    if (key != Point.NO_KEY && table.add(key, j) >= 3) found = true;
+                }
+                if (!found) continue;
+                for (int j = i + 1; j < n; j++) {
+                    long key = points[i].slopeKey(points[j]);
+                    int slot = key == Point.NO_KEY ? -1 : table.find(key);
+                    if (slot >= 0 && table.count[slot] >= 3 && table.last[slot] == j) res.add(new Found(i, j, key));
+                }
+            }
+            return res;
+        }
+    }
+
+    private static boolean contains(long[] keys, int n, long key) {
+        for (int i = 0; i < n; i++) {
+            if (keys[i] == key) return true;
+        }
+        return false;
+    }
+
+    // open-addressing table from slope key to the number of points with that key and
+    // the last of them; slots stamped with an older round count as empty, so clear()
+    // does not touch the arrays
+    private static class SlopeTable {
+
+        final long[] keys;
+        final int[] count, last, stamp;
+        private final int mask;
+        private int round;
+
+        SlopeTable(int n) {
+            int capacity = Integer.highestOneBit(Math.max(2, 2 * n - 1)) << 1;
+            keys = new long[capacity];
+            count = new int[capacity];
+            last = new int[capacity];
+            stamp = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        void clear() {
+            round++;
+        }
+
+        // count point j under key, return the new count
+        int add(long key, int j) {
+            int slot = slot(key);
+            while (stamp[slot] == round && keys[slot] != key) slot = (slot + 1) & mask;
+            if (stamp[slot] != round) {
+                stamp[slot] = round;
+                keys[slot] = key;
+                count[slot] = 0;
+            }
+            last[slot] = j;
+            return ++count[slot];
+        }
+
+        // slot of key, or -1 if it is not in the table
+        int find(long key) {
+            for (int slot = slot(key); stamp[slot] == round; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return slot;
+            }
+            return -1;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int) (h >>> 32) & mask;
+        }
     }
     
     private LineSegment[] findLine(Point[] points) {
@@ -20,16 +219,15 @@ public class FastCollinearPoints {
         Point[] auxiliary = points.clone();
         ArrayList<Data> buffer = new ArrayList<>();
         for (Point point : points) {
-            Comparator<Point> cmp = point.slopeOrder();
-            Arrays.sort(auxiliary, cmp);
+            // same order as Arrays.sort(auxiliary, point.slopeOrder())
+            double[] slopes = point.sortBySlope(auxiliary);
             for (int i = 0; i < n; i++) {
                 // 4 or more than 4 points in this line
-                if (i + 2 < n && cmp.compare(auxiliary[i], auxiliary[i + 1]) == 0 &&
-                        cmp.compare(auxiliary[i + 1], auxiliary[i + 2]) == 0) {
+                if (i + 2 < n && slopes[i] == slopes[i + 1] && slopes[i + 1] == slopes[i + 2]) {
                     int first = i;
                     // for every line, only preserve two endpoints
                     Point start = point, end = point;
-                    while (i < n && cmp.compare(auxiliary[i], auxiliary[first]) == 0) {
+                    while (i < n && slopes[i] == slopes[first]) {
                         start = start.compareTo(auxiliary[i]) < 0 ? start : auxiliary[i];
                         end = end.compareTo(auxiliary[i]) > 0 ? end : auxiliary[i];
                         i++;
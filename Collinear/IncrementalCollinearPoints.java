@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Finds line segments of 4 or more points as points arrive one at a time.
+ *
+ * Adding a point groups the points before it by exact slope key (Point.slopeKey)
+ * in a hash table from slope to the number of points and the first and last of
+ * them, which takes O(n) time. A group of 3 or more earlier points is a segment
+ * with the new point: new if the group had exactly 3, extended if the new point
+ * lies beyond one of its ends. Only the segments are kept between insertions,
+ * not a slope table per point, which would take O(n^2) memory.
+ */
+public class IncrementalCollinearPoints {
+
+    private final ArrayList<Point> points = new ArrayList<>();
+    private final TreeSet<Point> seen = new TreeSet<>();
+    // segment of every line with 4 or more points, found by slope key and first point
+    private final HashMap<Line, Integer> lines = new HashMap<>();
+    private final ArrayList<LineSegment> segments = new ArrayList<>();
+
+    // per-insertion table: slope key -> count, first and last point, by index
+    private long[] keys = new long[16];
+    private int[] count = new int[16], first = new int[16], last = new int[16], stamp = new int[16];
+    private int round;
+
+    // adds the point, returns the segments it creates or extends
+    public List<LineSegment> add(Point p) {
+        if (p == null || !seen.add(p)) throw new IllegalArgumentException();
+        int n = points.size();
+        if (2 * n >= keys.length) grow(4 * n);
+        round++;
+        for (int i = 0; i < n; i++) {
+            long key = p.slopeKey(points.get(i));
+            if (key != Point.NO_KEY) count(key, i);
+        }
+
+        List<LineSegment> res = new ArrayList<>();
+        points.add(p);
+        for (int slot = 0; slot < keys.length && n >= 3; slot++) {
+            if (stamp[slot] != round || count[slot] < 3) continue;
+            Point start = points.get(first[slot]), end = points.get(last[slot]);
+            boolean before = p.compareTo(start) < 0, after = p.compareTo(end) > 0;
+            LineSegment segment = new LineSegment(before ? p : start, after ? p : end);
+            if (count[slot] == 3) {
+                lines.put(new Line(keys[slot], before ? n : first[slot]), segments.size());
+                segments.add(segment);
+                res.add(segment);
+            } else if (before || after) {
+                Integer index = before ? lines.remove(new Line(keys[slot], first[slot]))
+                                       : lines.get(new Line(keys[slot], first[slot]));
+                if (before) lines.put(new Line(keys[slot], n), index);
+                segments.set(index, segment);
+                res.add(segment);
+            }
+        }
+        return res;
+    }
+
+    // the number of points added
+    public int numberOfPoints() {
+        return points.size();
+    }
+
+    // the number of line segments
+    public int numberOfSegments() {
+        return segments.size();
+    }
+
+    // the line segments, in the order they were found
+    public LineSegment[] segments() {
+        return segments.toArray(new LineSegment[0]);
+    }
+
+    // count point i under key, keeping the first and last point in compareTo order
+    private void count(long key, int i) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+        while (stamp[slot] == round && keys[slot] != key) slot = (slot + 1) & mask;
+        if (stamp[slot] != round) {
+            stamp[slot] = round;
+            keys[slot] = key;
+            count[slot] = 0;
+            first[slot] = i;
+            last[slot] = i;
+        }
+        count[slot]++;
+        Point q = points.get(i);
+        if (q.compareTo(points.get(first[slot])) < 0) first[slot] = i;
+        if (q.compareTo(points.get(last[slot])) > 0) last[slot] = i;
+    }
+
+    private void grow(int capacity) {
+        capacity = Integer.highestOneBit(capacity - 1) << 1;
+        keys = new long[capacity];
+        count = new int[capacity];
+        first = new int[capacity];
+        last = new int[capacity];
+        stamp = new int[capacity];
+        round = 0;
+    }
+
+    // a line: slope key and the index of its first point
+    private static class Line {
+
+        final long key;
+        final int first;
+
+        Line(long key, int first) {
+            this.key = key;
+            this.first = first;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Line)) return false;
+            Line that = (Line) o;
+            return key == that.key && first == that.first;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, first);
+        }
+    }
+
+    // feed the points of test2 of FastCollinearPoints one at a time
+    public static void main(String[] args) {
+        int[] test = {
+                10000, 0,
+                0, 10000,
+                3000, 7000,
+                7000, 3000,
+                20000, 21000,
+                3000, 4000,
+                14000, 15000,
+                6000, 7000,
+                -1000, 11000,
+                30000, 31000};
+        IncrementalCollinearPoints incremental = new IncrementalCollinearPoints();
+        for (int i = 0; i < test.length; i += 2) {
+            Point p = new Point(test[i], test[i + 1]);
+            System.out.println(p + ": " + incremental.add(p));
+        }
+        System.out.println(Arrays.toString(incremental.segments()));
+    }
+}
@@ -8,6 +8,7 @@
  *
  ******************************************************************************/
 
+import java.util.Arrays;
 import java.util.Comparator;
 import edu.princeton.cs.algs4.StdDraw;
 
@@ -16,6 +17,8 @@ public class Point implements Comparable<Point> {
     private final int x;     // x-coordinate of this point
     private final int y;     // y-coordinate of this point
 
+    static final long NO_KEY = -1;   // slopeKey() of points too far apart
+
     /**
      * Initializes a new point.
      *
@@ -66,6 +69,100 @@ public class Point implements Comparable<Point> {
         return (double) (that.y - y) / (that.x - x);
     }
 
+    /**
+     * Returns true if the slopes from this point to a and to b are equal, as
+     * slopeTo(a) == slopeTo(b) would with exact arithmetic: by comparing the
+     * cross products dy1 * dx2 and dy2 * dx1, which are exact for all int
+     * coordinates (differences need 33 bits, so the products are compared as
+     * 128-bit numbers). A point equal to this point only has the same slope
+     * as another one.
+     *
+     * @param  a the first point
+     * @param  b the second point
+     * @return whether this point, a and b have the same slope
+     */
+    public boolean sameSlope(Point a, Point b) {
+        long dx1 = (long) a.x - x, dy1 = (long) a.y - y;
+        long dx2 = (long) b.x - x, dy2 = (long) b.y - y;
+        boolean degenerate1 = (dx1 | dy1) == 0, degenerate2 = (dx2 | dy2) == 0;
+        if (degenerate1 || degenerate2) return degenerate1 && degenerate2;
+        return dy1 * dx2 == dy2 * dx1 && Math.multiplyHigh(dy1, dx2) == Math.multiplyHigh(dy2, dx1);
+    }
+
+    /**
+     * Compares two points by the slope they make with this point, in the
+     * same order as slopeOrder(), but with exact integer arithmetic instead
+     * of double division.
+     *
+     * @return the Comparator that defines this ordering on points
+     */
+    public Comparator<Point> exactSlopeOrder() {
+        return this::compareSlopes;
+    }
+
+    private int compareSlopes(Point a, Point b) {
+        long dx1 = (long) a.x - x, dy1 = (long) a.y - y;
+        long dx2 = (long) b.x - x, dy2 = (long) b.y - y;
+        // equal point (-infinity), then finite slopes, then vertical (+infinity)
+        int kind1 = (dx1 | dy1) == 0 ? 0 : dx1 == 0 ? 2 : 1;
+        int kind2 = (dx2 | dy2) == 0 ? 0 : dx2 == 0 ? 2 : 1;
+        if (kind1 != 1 || kind2 != 1) return Integer.compare(kind1, kind2);
+        if (dx1 < 0) {
+            dx1 = -dx1;
+            dy1 = -dy1;
+        }
+        if (dx2 < 0) {
+            dx2 = -dx2;
+            dy2 = -dy2;
+        }
+        // dy1 / dx1 against dy2 / dx2 with positive denominators, as 128-bit products
+        long high1 = Math.multiplyHigh(dy1, dx2), high2 = Math.multiplyHigh(dy2, dx1);
+        if (high1 != high2) return Long.compare(high1, high2);
+        return Long.compareUnsigned(dy1 * dx2, dy2 * dx1);
+    }
+
+    /**
+     * Returns the slope to that point as an exact key: the fraction dy / dx in
+     * lowest terms, with dy > 0, or dy = 0 and dx = 1, packed as dy * 2^32 + dx.
+     * Two pairs of points have the same key if and only if they have the same
+     * slope. Returns 0 if the points are equal, and NO_KEY if dy or dx does not
+     * fit in an int; that needs coordinates at least 2^31 apart, and such a
+     * pair cannot be on a segment of 4 or more points.
+     *
+     * @param  that the other point
+     * @return the slope key between this point and the specified point
+     */
+    long slopeKey(Point that) {
+        long dx = (long) that.x - x, dy = (long) that.y - y;
+        if (dy < 0 || dy == 0 && dx < 0) {
+            dx = -dx;
+            dy = -dy;
+        }
+        if (dy == 0) return dx == 0 ? 0 : 1;
+        if (dx == 0) return 1L << 32;
+        long g = gcd(Math.abs(dx), dy);
+        dx /= g;
+        dy /= g;
+        if (dy > Integer.MAX_VALUE || Math.abs(dx) > Integer.MAX_VALUE) return NO_KEY;
+        return dy << 32 | (dx & 0xffffffffL);
+    }
+
+    // binary gcd of two positive numbers
+    private static long gcd(long a, long b) {
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>= Long.numberOfTrailingZeros(a);
+        while (b != 0) {
+            b >>= Long.numberOfTrailingZeros(b);
+            if (a > b) {
+                long temp = a;
+                a = b;
+                b = temp;
+            }
+            b -= a;
+        }
+        return a << shift;
+    }
+
     /**
      * Compares two points by y-coordinate, breaking ties by x-coordinate.
      * Formally, the invoking point (x0, y0) is less than the argument point
@@ -108,6 +205,77 @@ public class Point implements Comparable<Point> {
         }
     }
 
+    /**
+     * Sorts the points by the slope they make with this point, in the same
+     * order as Arrays.sort(points, slopeOrder()), including the order of
+     * points with equal slopes. The slopes are computed once into an array
+     * of primitive keys that are radix sorted along with the indices, so no
+     * comparator is called.
+     *
+     * @param points the points to sort
+     */
+    public void sortBySlopeOrder(Point[] points) {
+        sortBySlope(points);
+    }
+
+    // sorts points as sortBySlopeOrder() and returns their slopes in the new order
+    double[] sortBySlope(Point[] points) {
+        int n = points.length;
+        long[] keys = new long[n];
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++) {
+            // the bits of a double, flipped so that unsigned order is numeric order
+            long bits = Double.doubleToRawLongBits(slopeTo(points[i]));
+            keys[i] = bits ^ (bits >> 63 | Long.MIN_VALUE);
+            index[i] = i;
+        }
+        radixSort(keys, index);
+        Point[] copy = points.clone();
+        double[] slopes = new double[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = copy[index[i]];
+            long bits = keys[i] ^ (~keys[i] >> 63 | Long.MIN_VALUE);
+            slopes[i] = Double.longBitsToDouble(bits);
+        }
+        return slopes;
+    }
+
+    // stable LSD radix sort of unsigned keys a byte at a time, moving index along;
+    // bytes that are the same for every key are skipped
+    private static void radixSort(long[] keys, int[] index) {
+        int n = keys.length;
+        if (n < 64) {
+            // insertion sort
+            for (int i = 1; i < n; i++) {
+                for (int j = i; j > 0 && Long.compareUnsigned(keys[j - 1], keys[j]) > 0; j--) {
+                    long key = keys[j];
+                    keys[j] = keys[j - 1];
+                    keys[j - 1] = key;
+                    int temp = index[j];
+                    index[j] = index[j - 1];
+                    index[j - 1] = temp;
+                }
+            }
+            return;
+        }
+        long[] auxKeys = new long[n];
+        int[] auxIndex = new int[n];
+        int[] count = new int[257];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(count, 0);
+            for (long key : keys) count[(int) (key >>> shift & 0xff) + 1]++;
+            if (count[(int) (keys[0] >>> shift & 0xff) + 1] == n) continue;
+            for (int r = 0; r < 256; r++) count[r + 1] += count[r];
+            for (int i = 0; i < n; i++) {
+                int to = count[(int) (keys[i] >>> shift & 0xff)]++;
+                auxKeys[to] = keys[i];
+                auxIndex[to] = index[i];
+            }
+            System.arraycopy(auxKeys, 0, keys, 0, n);
+            System.arraycopy(auxIndex, 0, index, 0, n);
+        }
+    }
+
     /**
      * Returns a string representation of this point.
      * This method is provide for debugging;
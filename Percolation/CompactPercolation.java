@@ -0,0 +1,149 @@
+import java.util.SplittableRandom;
+
+/**
+ * Percolation for very large grids, at about 4.4 bytes per site instead of the
+ * 17 of a boolean[] plus two WeightedQuickUnionUF.
+ *
+ * Open sites and the TOP / BOTTOM flags of component roots are bitsets, and the
+ * single union-find has no size or rank array: roots are linked by a fixed
+ * pseudorandom priority (randomized linking), with path halving. As in
+ * Percolation, isFull() asks the root whether it reaches the top row, so there
+ * is no virtual bottom site and no backwash.
+ *
+ * Sites are stored in TILE-by-TILE tiles, so that the neighbours of a site are
+ * almost always in the same tile and in nearby cache lines.
+ */
+public class CompactPercolation {
+
+    // tiles are 2^TILE_BITS sites wide and tall
+    private static final int TILE_BITS = 6;
+    private static final int TILE = 1 << TILE_BITS;
+
+    private final int n;
+    private final int tilesPerRow;
+    private int openSites;
+    private boolean percolates;
+    private final int[] parent;
+    private final long[] open;
+    private final long[] top;
+    private final long[] bottom;
+
+    // creates n-by-n grid, with all sites initially blocked
+    public CompactPercolation(int n) {
+        if (n <= 0) throw new IllegalArgumentException();
+        this.n = n;
+        tilesPerRow = (n + TILE - 1) >>> TILE_BITS;
+        long sites = (long) tilesPerRow * tilesPerRow * TILE * TILE;
+        if (sites > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("grid too large");
+        parent = new int[(int) sites];
+        for (int i = 0; i < parent.length; i++) parent[i] = i;
+        open = new long[(int) ((sites + 63) >>> 6)];
+        top = new long[open.length];
+        bottom = new long[open.length];
+    }
+
+    // opens the site (row, col) if it is not open already
+    public void open(int row, int col) {
+        checkIndices(row, col);
+        int r = row - 1, c = col - 1;
+        int index = index(r, c);
+        if (get(open, index)) return;
+        set(open, index);
+        openSites++;
+        if (r == 0) set(top, index);
+        if (r == n - 1) set(bottom, index);
+        if (r > 0) union(index, index(r - 1, c));
+        if (r < n - 1) union(index, index(r + 1, c));
+        if (c > 0) union(index, index(r, c - 1));
+        if (c < n - 1) union(index, index(r, c + 1));
+        int root = find(index);
+        if (get(top, root) && get(bottom, root)) percolates = true;
+    }
+
+    // is the site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        checkIndices(row, col);
+        return get(open, index(row - 1, col - 1));
+    }
+
+    // is the site (row, col) full?
+    public boolean isFull(int row, int col) {
+        checkIndices(row, col);
+        int index = index(row - 1, col - 1);
+        return get(open, index) && get(top, find(index));
+    }
+
+    // returns the number of open sites
+    public int numberOfOpenSites() {
+        return openSites;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    // position of 0-based (r, c): tiles in row-major order, sites within a tile in row-major order
+    private int index(int r, int c) {
+        int tile = (r >>> TILE_BITS) * tilesPerRow + (c >>> TILE_BITS);
+        return (tile << (2 * TILE_BITS)) | ((r & (TILE - 1)) << TILE_BITS) | (c & (TILE - 1));
+    }
+
+    // connect open site p with neighbour q if q is open
+    private void union(int p, int q) {
+        if (!get(open, q)) return;
+        int rootP = find(p), rootQ = find(q);
+        if (rootP == rootQ) return;
+        if (priority(rootP) < priority(rootQ)) {
+            int temp = rootP;
+            rootP = rootQ;
+            rootQ = temp;
+        }
+        parent[rootQ] = rootP;
+        if (get(top, rootQ)) set(top, rootP);
+        if (get(bottom, rootQ)) set(bottom, rootP);
+    }
+
+    private int find(int p) {
+        while (p != parent[p]) {
+            // path halving
+            parent[p] = parent[parent[p]];
+            p = parent[p];
+        }
+        return p;
+    }
+
+    // fixed pseudorandom priority of a site (murmur3 finalizer)
+    private static int priority(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    // verify indices: 1-based
+    private void checkIndices(int row, int col) {
+        if (row < 1 || row > n || col < 1 || col > n) throw new IllegalArgumentException();
+    }
+
+    // test client: open random sites of an n-by-n grid until it percolates
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        SplittableRandom random = new SplittableRandom(1);
+        CompactPercolation p = new CompactPercolation(n);
+        long start = System.nanoTime();
+        while (!p.percolates()) p.open(1 + random.nextInt(n), 1 + random.nextInt(n));
+        System.out.printf("%d open sites (%.4f) in %.1f s%n", p.numberOfOpenSites(),
+                (double) p.numberOfOpenSites() / ((double) n * n), (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,275 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Percolation that any number of threads may open and query at the same time.
+ *
+ * Open sites are an atomic bitmap, and connectivity is kept by two lock-free
+ * union-finds (Jayanti and Tarjan): parent links change only by CAS, roots are
+ * linked by a fixed pseudorandom priority (randomized linking), and find() splits
+ * paths with CAS as well. As in the original two-WeightedQuickUnionUF version,
+ * one union-find has a virtual top site, for isFull(), and the other has a virtual
+ * top and bottom site, for percolates(), so there is no backwash.
+ *
+ * Sites only ever get connected, so isFull() and percolates() never go back from
+ * true to false, and once every open() has returned they agree with Percolation
+ * on the same open sites.
+ */
+public class ConcurrentPercolation {
+
+    private final int n;
+    private final int top, bottom;
+    private final AtomicLongArray open;
+    private final AtomicInteger openSites = new AtomicInteger();
+    // full: sites and virtual top; connected: sites, virtual top and virtual bottom
+    private final ConcurrentUF full;
+    private final ConcurrentUF connected;
+    private volatile boolean percolates;
+
+    // creates n-by-n grid, with all sites initially blocked
+    public ConcurrentPercolation(int n) {
+        if (n <= 0 || (long) n * n > Integer.MAX_VALUE - 8) throw new IllegalArgumentException();
+        this.n = n;
+        top = n * n;
+        bottom = n * n + 1;
+        open = new AtomicLongArray((n * n + 63) >>> 6);
+        full = new ConcurrentUF(n * n + 1);
+        connected = new ConcurrentUF(n * n + 2);
+    }
+
+    // opens the site (row, col) if it is not open already
+    public void open(int row, int col) {
+        checkIndices(row, col);
+        open((row - 1) * n + col - 1);
+    }
+
+    // opens the site with 0-based 1D index, which must be valid
+    void open(int index) {
+        long bit = 1L << index;
+        // exactly one thread wins the bit and connects the site
+        if ((open.getAndAccumulate(index >>> 6, bit, (a, b) -> a | b) & bit) != 0) return;
+        openSites.incrementAndGet();
+        int row = index / n, col = index - row * n;
+        if (row == 0) union(index, top);
+        if (row == n - 1) connected.union(index, bottom);
+        // the bit is set before the neighbours are read, so of two neighbours opened
+        // at the same time at least one sees the other
+        if (row > 0 && isOpen(index - n)) union(index, index - n);
+        if (row < n - 1 && isOpen(index + n)) union(index, index + n);
+        if (col > 0 && isOpen(index - 1)) union(index, index - 1);
+        if (col < n - 1 && isOpen(index + 1)) union(index, index + 1);
+        if (!percolates && connected.sameSet(top, bottom)) percolates = true;
+    }
+
+    // is the site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        checkIndices(row, col);
+        return isOpen((row - 1) * n + col - 1);
+    }
+
+    // is the site (row, col) full?
+    public boolean isFull(int row, int col) {
+        checkIndices(row, col);
+        int index = (row - 1) * n + col - 1;
+        return isOpen(index) && full.sameSet(index, top);
+    }
+
+    // returns the number of open sites
+    public int numberOfOpenSites() {
+        return openSites.get();
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        if (!percolates && connected.sameSet(top, bottom)) percolates = true;
+        return percolates;
+    }
+
+    private boolean isOpen(int index) {
+        return (open.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    private void union(int p, int q) {
+        full.union(p, q);
+        connected.union(p, q);
+    }
+
+    // verify indices: 1-based
+    private void checkIndices(int row, int col) {
+        if (row < 1 || row > n || col < 1 || col > n) throw new IllegalArgumentException();
+    }
+
+    // lock-free union-find with randomized linking and path splitting
+    private static class ConcurrentUF {
+
+        private final AtomicIntegerArray parent;
+
+        ConcurrentUF(int n) {
+            parent = new AtomicIntegerArray(n);
+            for (int i = 0; i < n; i++) parent.set(i, i);
+        }
+
+        int find(int p) {
+            while (true) {
+                int q = parent.get(p);
+                if (q == p) return p;
+                int r = parent.get(q);
+                // path splitting, a failed CAS only means someone else moved p up
+                if (q != r) parent.compareAndSet(p, q, r);
+                p = q;
+            }
+        }
+
+        void union(int p, int q) {
+            while (true) {
+                p = find(p);
+                q = find(q);
+                if (p == q) return;
+                // the lower-priority root becomes the child, fails if it stopped being a root
+                if (below(p, q)) {
+                    if (parent.compareAndSet(p, p, q)) return;
+                } else if (parent.compareAndSet(q, q, p)) {
+                    return;
+                }
+            }
+        }
+
+        boolean sameSet(int p, int q) {
+            while (true) {
+                p = find(p);
+                q = find(q);
+                if (p == q) return true;
+                // p was a root after q was found, so they were apart at that point
+                if (parent.get(p) == p) return false;
+            }
+        }
+
+        // total order on sites by fixed pseudorandom priority, ties broken by index
+        private static boolean below(int p, int q) {
+            int a = priority(p), b = priority(q);
+            return a < b || a == b && p < q;
+        }
+
+        // murmur3 finalizer
+        private static int priority(int x) {
+            x ^= x >>> 16;
+            x *= 0x85ebca6b;
+            x ^= x >>> 13;
+            x *= 0xc2b2ae35;
+            x ^= x >>> 16;
+            return x;
+        }
+    }
+
+    // random permutation of the n * n sites
+    private static int[] shuffled(int n, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] order = new int[n * n];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        for (int i = order.length - 1; i > 0; i--) {
+            int k = random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[k];
+            order[k] = temp;
+        }
+        return order;
+    }
+
+    // open order[0, hi) with threads threads, each taking an interleaved share
+    private static void openConcurrently(int[] order, int hi, int threads, IntConsumer open)
+            throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                for (int i = first; i < hi; i += threads) open.accept(order[i]);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+    }
+
+    // open a random fraction of the sites concurrently while a reader checks that
+    // isFull() and percolates() never go back, then compare with Percolation
+    private static void stress(int n, int threads, int rounds) throws InterruptedException {
+        for (int round = 0; round < rounds; round++) {
+            long seed = round;
+            int[] order = shuffled(n, seed);
+            int opened = (int) (order.length * (0.5 + 0.02 * (round % 10)));
+            ConcurrentPercolation p = new ConcurrentPercolation(n);
+            boolean[] seenFull = new boolean[n * n];
+            boolean[] failed = new boolean[1];
+            Thread reader = new Thread(() -> {
+                boolean seenPercolates = false;
+                SplittableRandom random = new SplittableRandom(seed);
+                while (p.numberOfOpenSites() < opened) {
+                    int index = random.nextInt(n * n);
+                    boolean isFull = p.isFull(index / n + 1, index % n + 1);
+                    if (seenFull[index] && !isFull || seenPercolates && !p.percolates()) failed[0] = true;
+                    seenFull[index] |= isFull;
+                    seenPercolates |= p.percolates();
+                }
+            });
+            reader.start();
+            openConcurrently(order, opened, threads, p::open);
+            reader.join();
+
+            Percolation expected = new Percolation(n);
+            for (int i = 0; i < opened; i++) expected.open(order[i]);
+            if (failed[0] || p.percolates() != expected.percolates()
+                    || p.numberOfOpenSites() != expected.numberOfOpenSites()) {
+                throw new IllegalStateException("round " + round);
+            }
+            for (int row = 1; row <= n; row++) {
+                for (int col = 1; col <= n; col++) {
+                    if (p.isFull(row, col) != expected.isFull(row, col)
+                            || p.isOpen(row, col) != expected.isOpen(row, col)) {
+                        throw new IllegalStateException("round " + round + " site " + row + " " + col);
+                    }
+                }
+            }
+        }
+        System.out.println("stress: " + rounds + " rounds of " + n + "x" + n + " with " + threads + " threads ok");
+    }
+
+    // open every site of an n-by-n grid with 1..threads threads, against one Percolation behind a lock
+    private static void bench(int n, int maxThreads) throws InterruptedException {
+        int[] order = shuffled(n, 1);
+        System.out.printf("%8s %14s %14s%n", "threads", "lock-free M/s", "locked M/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double lockFree = Double.MAX_VALUE, locked = Double.MAX_VALUE;
+            for (int rep = 0; rep < 3; rep++) {
+                ConcurrentPercolation p = new ConcurrentPercolation(n);
+                long start = System.nanoTime();
+                openConcurrently(order, order.length, threads, p::open);
+                lockFree = Math.min(lockFree, System.nanoTime() - start);
+
+                Percolation q = new Percolation(n);
+                start = System.nanoTime();
+                openConcurrently(order, order.length, threads, index -> {
+                    synchronized (q) {
+                        q.open(index);
+                    }
+                });
+                locked = Math.min(locked, System.nanoTime() - start);
+            }
+            System.out.printf("%8d %14.1f %14.1f%n", threads, order.length / lockFree * 1e3, order.length / locked * 1e3);
+        }
+    }
+
+    // test client: "stress [n] [threads] [rounds]" or "bench [n] [threads]"
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0 && args[0].equals("bench")) {
+            int n = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+            bench(n, args.length > 2 ? Integer.parseInt(args[2]) : cores);
+        } else {
+            int n = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(2, cores);
+            stress(n, threads, args.length > 3 ? Integer.parseInt(args[3]) : 50);
+        }
+    }
+}
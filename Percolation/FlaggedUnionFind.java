@@ -0,0 +1,64 @@
+/**
+ * Union-find over sites with a state byte per site, shared by Percolation and
+ * LatticePercolation. OPEN marks open sites; TOP and BOTTOM are kept on the root
+ * of each component and tell whether it reaches the top or the bottom face.
+ * Union by rank, find with path halving.
+ */
+class FlaggedUnionFind {
+
+    static final byte OPEN = 1, TOP = 2, BOTTOM = 4;
+
+    private final int[] parent;
+    private final byte[] rank;
+    private final byte[] state;
+
+    // sites sites, all blocked
+    FlaggedUnionFind(int sites) {
+        parent = new int[sites];
+        rank = new byte[sites];
+        state = new byte[sites];
+        for (int i = 0; i < sites; i++) parent[i] = i;
+    }
+
+    boolean isOpen(int site) {
+        return state[site] != 0;
+    }
+
+    // open a single-site component; flags must include OPEN
+    void open(int site, byte flags) {
+        state[site] = flags;
+    }
+
+    // flags of the component of site, 0 if it is blocked
+    byte flags(int site) {
+        return state[site] == 0 ? 0 : state[find(site)];
+    }
+
+    // connect the components of p and q
+    void union(int p, int q) {
+        int rootP = find(p), rootQ = find(q);
+        if (rootP != rootQ) link(rootP, rootQ);
+    }
+
+    // link two distinct roots, the flags of both go to the new root
+    void link(int rootP, int rootQ) {
+        if (rank[rootP] < rank[rootQ]) {
+            int temp = rootP;
+            rootP = rootQ;
+            rootQ = temp;
+        } else if (rank[rootP] == rank[rootQ]) {
+            rank[rootP]++;
+        }
+        parent[rootQ] = rootP;
+        state[rootP] |= state[rootQ];
+    }
+
+    int find(int p) {
+        while (p != parent[p]) {
+            // path halving
+            parent[p] = parent[parent[p]];
+            p = parent[p];
+        }
+        return p;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * The n^dimension hypercubic lattice: a square grid for dimension 2, a simple
+ * cubic lattice for dimension 3. Site (x0, x1, ..., x(d-1)) has number
+ * x0 + x1 n + ... + x(d-1) n^(d-1), and the last axis runs from the top face
+ * to the bottom face, so dimension 2 numbers sites like Percolation does.
+ * With periodic boundaries every axis but the last one wraps around; that needs
+ * n >= 3, as rings of 1 or 2 sites would have self-loops or doubled bonds.
+ */
+public class HypercubicLattice implements Lattice {
+
+    private final int n, dimension;
+    private final boolean periodic;
+    private final int sites;
+    // n^(dimension - 1), the sites of one face
+    private final int face;
+    // stride[axis] = n^axis, the step between neighbours along axis
+    private final int[] stride;
+
+    // n^dimension sites, open or periodic lateral boundaries
+    public HypercubicLattice(int n, int dimension, boolean periodic) {
+        if (n <= 0 || dimension <= 0) throw new IllegalArgumentException();
+        if (periodic && dimension > 1 && n < 3) throw new IllegalArgumentException("periodic lattice needs n >= 3");
+        long size = 1;
+        for (int i = 0; i < dimension; i++) {
+            size *= n;
+            if (size > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("lattice too large");
+        }
+        this.n = n;
+        this.dimension = dimension;
+        this.periodic = periodic;
+        sites = (int) size;
+        face = sites / n;
+        stride = new int[dimension];
+        stride[0] = 1;
+        for (int i = 1; i < dimension; i++) stride[i] = stride[i - 1] * n;
+    }
+
+    @Override
+    public int sites() {
+        return sites;
+    }
+
+    @Override
+    public int degree() {
+        return 2 * dimension;
+    }
+
+    // slot k < dimension steps forward along axis k, slot k + dimension backward
+    @Override
+    public int neighbour(int site, int k) {
+        int axis = k < dimension ? k : k - dimension;
+        int step = stride[axis];
+        int x = site / step % n;
+        boolean wraps = periodic && axis < dimension - 1;
+        if (k < dimension) {
+            if (x < n - 1) return site + step;
+            return wraps ? site - (n - 1) * step : -1;
+        }
+        if (x > 0) return site - step;
+        return wraps ? site + (n - 1) * step : -1;
+    }
+
+    @Override
+    public long bonds() {
+        long res = 0;
+        for (int axis = 0; axis < dimension; axis++) {
+            res += periodic && axis < dimension - 1 ? sites : (long) face * (n - 1);
+        }
+        return res;
+    }
+
+    @Override
+    public boolean isTop(int site) {
+        return site < face;
+    }
+
+    @Override
+    public boolean isBottom(int site) {
+        return site >= sites - face;
+    }
+
+    @Override
+    public String toString() {
+        return n + "^" + dimension + (periodic ? " periodic" : "");
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Topology of a percolation lattice: sites are numbered 0 to sites() - 1 and
+ * every site has degree() neighbour slots, computed on demand rather than stored.
+ * Slot k + degree() / 2 is the opposite direction of slot k, so the bonds of the
+ * lattice are the slots k < degree() / 2 of every site, numbered
+ * site * (degree() / 2) + k.
+ */
+public interface Lattice {
+
+    // number of sites
+    int sites();
+
+    // number of neighbour slots of every site, even
+    int degree();
+
+    // the neighbour of site in slot k, or -1 if there is none (an open boundary)
+    int neighbour(int site, int k);
+
+    // number of bond slots that have a neighbour
+    long bonds();
+
+    // does site belong to the top face?
+    boolean isTop(int site);
+
+    // does site belong to the bottom face?
+    boolean isBottom(int site);
+}
@@ -0,0 +1,151 @@
+import java.util.SplittableRandom;
+
+/**
+ * Percolation on any Lattice, with the union-find of Percolation.
+ *
+ * In SITE mode sites are opened one by one and neighbouring open sites are
+ * connected. In BOND mode every site is open and bonds are opened one by one,
+ * connecting the two sites at their ends. Either way a site is full if it is
+ * connected to an open site of the top face, and the system percolates when a
+ * component touches both faces.
+ */
+public class LatticePercolation {
+
+    public enum Mode { SITE, BOND }
+
+    private static final byte OPEN = FlaggedUnionFind.OPEN, TOP = FlaggedUnionFind.TOP,
+            BOTTOM = FlaggedUnionFind.BOTTOM;
+
+    private final Lattice lattice;
+    private final Mode mode;
+    private final int half;
+    private int opened;
+    private boolean percolates;
+    private final FlaggedUnionFind components;
+    // BOND mode: open bond slots
+    private final long[] bonds;
+
+    // all sites (SITE) or all bonds (BOND) of lattice initially blocked
+    public LatticePercolation(Lattice lattice, Mode mode) {
+        if (lattice == null || mode == null) throw new IllegalArgumentException();
+        this.lattice = lattice;
+        this.mode = mode;
+        half = lattice.degree() / 2;
+        int sites = lattice.sites();
+        if (mode == Mode.BOND && (long) sites * half > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("lattice too large");
+        }
+        components = new FlaggedUnionFind(sites);
+        bonds = mode == Mode.BOND ? new long[(sites * half + 63) >>> 6] : null;
+        if (mode == Mode.BOND) {
+            for (int i = 0; i < sites; i++) {
+                components.open(i, flags(i));
+                // a single site on both faces
+                if (flags(i) == (OPEN | TOP | BOTTOM)) percolates = true;
+            }
+        }
+    }
+
+    // number of sites (SITE) or bond slots (BOND) that open() accepts
+    public int size() {
+        return mode == Mode.SITE ? lattice.sites() : lattice.sites() * half;
+    }
+
+    // opens site i (SITE) or bond slot i (BOND) if it is not open already;
+    // a bond slot without a neighbour is ignored
+    public void open(int i) {
+        if (i < 0 || i >= size()) throw new IllegalArgumentException();
+        if (mode == Mode.SITE) openSite(i);
+        else openBond(i);
+    }
+
+    private void openSite(int site) {
+        if (components.isOpen(site)) return;
+        components.open(site, flags(site));
+        opened++;
+        for (int k = 0, degree = lattice.degree(); k < degree; k++) {
+            int q = lattice.neighbour(site, k);
+            if (q >= 0 && components.isOpen(q)) components.union(site, q);
+        }
+        if (components.flags(site) == (OPEN | TOP | BOTTOM)) percolates = true;
+    }
+
+    private void openBond(int bond) {
+        int site = bond / half;
+        int q = lattice.neighbour(site, bond - site * half);
+        if (q < 0 || (bonds[bond >>> 6] & (1L << bond)) != 0) return;
+        bonds[bond >>> 6] |= 1L << bond;
+        opened++;
+        components.union(site, q);
+        if (components.flags(site) == (OPEN | TOP | BOTTOM)) percolates = true;
+    }
+
+    // is site open? In BOND mode every site is
+    public boolean isOpen(int site) {
+        checkSite(site);
+        return components.isOpen(site);
+    }
+
+    // is site connected to the top face?
+    public boolean isFull(int site) {
+        checkSite(site);
+        return (components.flags(site) & TOP) != 0;
+    }
+
+    // returns the number of opened sites (SITE) or bonds (BOND)
+    public int numberOfOpen() {
+        return opened;
+    }
+
+    // fraction of the sites (SITE) or bonds (BOND) that are open
+    public double openFraction() {
+        if (opened == 0) return 0;
+        return (double) opened / (mode == Mode.SITE ? lattice.sites() : lattice.bonds());
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    private byte flags(int site) {
+        byte s = OPEN;
+        if (lattice.isTop(site)) s |= TOP;
+        if (lattice.isBottom(site)) s |= BOTTOM;
+        return s;
+    }
+
+    private void checkSite(int site) {
+        if (site < 0 || site >= lattice.sites()) throw new IllegalArgumentException();
+    }
+
+    // open sites or bonds of lattice in random order until it percolates,
+    // return the fraction of open sites or bonds
+    static double trial(Lattice lattice, Mode mode, SplittableRandom random) {
+        LatticePercolation p = new LatticePercolation(lattice, mode);
+        int[] indices = new int[p.size()];
+        for (int i = 0; i < indices.length; i++) indices[i] = i;
+        // Fisher-Yates, one swap per opened site or bond
+        for (int j = 0; j < indices.length && !p.percolates(); j++) {
+            int k = j + random.nextInt(indices.length - j);
+            int index = indices[k];
+            indices[k] = indices[j];
+            indices[j] = index;
+            p.open(index);
+        }
+        return p.openFraction();
+    }
+
+    // test client: one trial per lattice, n and dimension, site and bond, open and periodic
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        SplittableRandom random = new SplittableRandom(1);
+        for (boolean periodic : new boolean[] {false, true}) {
+            Lattice lattice = new HypercubicLattice(n, dimension, periodic);
+            for (Mode mode : Mode.values()) {
+                System.out.printf("%s %s: %.4f%n", lattice, mode, trial(lattice, mode, random));
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import edu.princeton.cs.algs4.StdOut;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Same estimates as PercolationStats, with the trials spread over a fork/join pool,
+ * for the n-by-n grid or for site or bond percolation on any Lattice.
+ * Trials are split into a fixed tree of tasks and every task gets its own
+ * SplittableRandom split off its parent, so the results only depend on the seed,
+ * not on the number of threads. Each task keeps a running mean and variance
+ * (Welford) that are merged up the tree, so no per-trial storage is needed.
+ */
+public class ParallelPercolationStats {
+
+    // trials run sequentially by one task
+    private static final int LEAF_TRIALS = 16;
+    private static final double CONFIDENCE_95 = 1.96;
+
+    private final int trials;
+    private final Welford stats;
+
+    // perform independent trials on an n-by-n grid with the common pool
+    public ParallelPercolationStats(int n, int trials, long seed) {
+        this(n, trials, seed, ForkJoinPool.commonPool());
+    }
+
+    // perform independent trials on an n-by-n grid with the given pool
+    public ParallelPercolationStats(int n, int trials, long seed, ForkJoinPool pool) {
+        if (n <= 0 || trials <= 0 || pool == null) throw new IllegalArgumentException();
+        this.trials = trials;
+        stats = pool.invoke(new TrialTask(random -> trial(n, random), 0, trials, new SplittableRandom(seed)));
+    }
+
+    // perform independent site or bond trials on any lattice with the given pool
+    public ParallelPercolationStats(Lattice lattice, LatticePercolation.Mode mode, int trials, long seed,
+                                    ForkJoinPool pool) {
+        if (lattice == null || mode == null || trials <= 0 || pool == null) throw new IllegalArgumentException();
+        this.trials = trials;
+        Trial trial = random -> LatticePercolation.trial(lattice, mode, random);
+        stats = pool.invoke(new TrialTask(trial, 0, trials, new SplittableRandom(seed)));
+    }
+
+    // sample mean of percolation threshold
+    public double mean() {
+        return stats.mean;
+    }
+
+    // sample standard deviation of percolation threshold
+    public double stddev() {
+        return Math.sqrt(stats.m2 / (stats.count - 1));
+    }
+
+    // low endpoint of 95% confidence interval
+    public double confidenceLo() {
+        return mean() - CONFIDENCE_95 * stddev() / Math.sqrt(trials);
+    }
+
+    // high endpoint of 95% confidence interval
+    public double confidenceHi() {
+        return mean() + CONFIDENCE_95 * stddev() / Math.sqrt(trials);
+    }
+
+    // open sites of an n-by-n grid in random order until it percolates,
+    // return the fraction of open sites
+    static double trial(int n, SplittableRandom random) {
+        int[] indices = new int[n * n];
+        for (int i = 0; i < indices.length; i++) indices[i] = i;
+        Percolation p = new Percolation(n);
+        // Fisher-Yates, one swap per opened site
+        for (int j = 0; j < indices.length; j++) {
+            int k = j + random.nextInt(indices.length - j);
+            int index = indices[k];
+            indices[k] = indices[j];
+            indices[j] = index;
+            p.open(index);
+            if (p.percolates()) break;
+        }
+        return (double) p.numberOfOpenSites() / (n * n);
+    }
+
+    // one trial, returns the fraction of open sites or bonds at percolation
+    private interface Trial {
+        double run(SplittableRandom random);
+    }
+
+    private static class TrialTask extends RecursiveTask<Welford> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Trial trial;
+        private final int lo, hi;
+        private final SplittableRandom random;
+
+        TrialTask(Trial trial, int lo, int hi, SplittableRandom random) {
+            this.trial = trial;
+            this.lo = lo;
+            this.hi = hi;
+            this.random = random;
+        }
+
+        @Override
+        protected Welford compute() {
+            if (hi - lo <= LEAF_TRIALS) {
+                Welford stats = new Welford();
+                for (int i = lo; i < hi; i++) stats.add(trial.run(random));
+                return stats;
+            }
+            int mid = (lo + hi) >>> 1;
+            TrialTask right = new TrialTask(trial, mid, hi, random.split());
+            right.fork();
+            Welford left = new TrialTask(trial, lo, mid, random).compute();
+            return left.merge(right.join());
+        }
+    }
+
+    // running count, mean and sum of squared deviations
+    static class Welford {
+
+        long count;
+        double mean, m2;
+
+        void add(double x) {
+            count++;
+            double delta = x - mean;
+            mean += delta / count;
+            m2 += delta * (x - mean);
+        }
+
+        // combine with another partial result (Chan et al.)
+        Welford merge(Welford that) {
+            if (that.count == 0) return this;
+            long total = count + that.count;
+            double delta = that.mean - mean;
+            mean += delta * that.count / total;
+            m2 += that.m2 + delta * delta * count * that.count / total;
+            count = total;
+            return this;
+        }
+    }
+
+    // test client: n, trials and an optional seed, or
+    // "lattice n dimension site|bond open|periodic trials [seed]"
+    public static void main(String[] args) {
+        ParallelPercolationStats stats;
+        if (args[0].equals("lattice")) {
+            int n = Integer.parseInt(args[1]);
+            int dimension = Integer.parseInt(args[2]);
+            LatticePercolation.Mode mode = LatticePercolation.Mode.valueOf(args[3].toUpperCase());
+            Lattice lattice = new HypercubicLattice(n, dimension, args[4].equals("periodic"));
+            int trials = Integer.parseInt(args[5]);
+            long seed = args.length > 6 ? Long.parseLong(args[6]) : System.nanoTime();
+            stats = new ParallelPercolationStats(lattice, mode, trials, seed, ForkJoinPool.commonPool());
+        } else {
+            int n = Integer.parseInt(args[0]);
+            int trials = Integer.parseInt(args[1]);
+            long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+            stats = new ParallelPercolationStats(n, trials, seed);
+        }
+        StdOut.println("mean                    = " + stats.mean());
+        StdOut.println("stddev                  = " + stats.stddev());
+        StdOut.println("95% confidence interval = [" + stats.confidenceLo() + ", " + stats.confidenceHi() + "]");
+    }
+}
@@ -1,55 +1,162 @@
-import edu.princeton.cs.algs4.WeightedQuickUnionUF;
+import java.util.Arrays;
 
 public class Percolation {
 
+    private static final byte OPEN = FlaggedUnionFind.OPEN, TOP = FlaggedUnionFind.TOP,
+            BOTTOM = FlaggedUnionFind.BOTTOM;
+
     private final int n;
     private int openSites;
-    private final WeightedQuickUnionUF uf1, uf2;
-    private final boolean[] grid;
-    private final int[][] dirs;
+    private boolean percolates;
+    // the n * n sites, with the flags of every component on its root
+    private final FlaggedUnionFind components;
+    // set by setListener(): next[] links the open sites of every component into a
+    // circular list, so that the sites of a component can be listed when it fills
+    private PercolationListener listener;
+    private int[] next;
+    private int[] pending = new int[0];
+    private int pendingCount;
+    private final int[] neighbours = new int[4];
 
     // creates n-by-n grid, with all sites initially blocked
     public Percolation(int n) {
         if (n <= 0) throw new IllegalArgumentException();
         this.n = n;
-        dirs = new int[][] {{0, 1}, {1, 0}, {0, -1}, {-1, 0}};
-        uf1 = new WeightedQuickUnionUF(n * n + 2);
-        uf2 = new WeightedQuickUnionUF(n * n + 1);
-        grid = new boolean[n * n];
-        for (int i = 0; i < n; i++) {
-            uf1.union(n * n, i);
-            uf2.union(n * n, i);
-            uf1.union(n * n + 1, n * (n - 1) + i);
-        }
+        components = new FlaggedUnionFind(n * n);
     }
 
     // opens the site (row, col) if it is not open already
     public void open(int row, int col) {
-        int index = get1DIndex(row, col);
-        if (grid[index]) return;
-        grid[index] = true;
+        open(get1DIndex(row, col));
+    }
+
+    // opens the sites (rows[i], cols[i]); all indices are checked before any site is opened
+    public void openAll(int[] rows, int[] cols) {
+        if (rows == null || cols == null || rows.length != cols.length) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < rows.length; i++) {
+            if (badIndices(rows[i], cols[i])) throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < rows.length; i++) open((rows[i] - 1) * n + cols[i] - 1);
+    }
+
+    // opens the sites packed as (long) row << 32 | col, see pack()
+    public void openAll(long[] sites) {
+        if (sites == null) throw new IllegalArgumentException();
+        for (long site : sites) {
+            if (badIndices((int) (site >>> 32), (int) site)) throw new IllegalArgumentException();
+        }
+        for (long site : sites) open(((int) (site >>> 32) - 1) * n + (int) site - 1);
+    }
+
+    // packs 1-based (row, col) for openAll(long[])
+    public static long pack(int row, int col) {
+        return (long) row << 32 | (col & 0xffffffffL);
+    }
+
+    // reports state changes from now on to listener, or to no one if it is null
+    public void setListener(PercolationListener listener) {
+        this.listener = listener;
+        if (listener == null) {
+            next = null;
+            return;
+        }
+        if (next != null) return;
+        next = new int[n * n];
+        for (int i = 0; i < next.length; i++) next[i] = i;
+        for (int i = 0; i < next.length; i++) {
+            int root = components.find(i);
+            if (!components.isOpen(i) || root == i) continue;
+            next[i] = next[root];
+            next[root] = i;
+        }
+    }
+
+    // opens the site with 0-based 1D index, which must be valid
+    void open(int index) {
+        if (components.isOpen(index)) return;
+        byte s = OPEN;
+        // a site on both rows (n = 1) percolates by itself
+        if (index < n) s |= TOP;
+        if (index >= n * (n - 1)) s |= BOTTOM;
+        components.open(index, s);
         openSites++;
-        for (int[] dir : dirs) {
-            int x = row + dir[0], y = col + dir[1];
-            // do not connect if neighbour is invalid or not open
-            if (badIndices(x, y) || !isOpen(x, y)) continue;
-            int neighbour = get1DIndex(x, y);
-            uf1.union(index, neighbour);
-            uf2.union(index, neighbour);
+        int count = neighbours(index);
+        if (listener != null) collectFull(index, count);
+        for (int i = 0; i < count; i++) union(index, neighbours[i]);
+        if (percolates || components.flags(index) != (OPEN | TOP | BOTTOM)) {
+            if (listener != null) fireFull();
+            return;
+        }
+        percolates = true;
+        if (listener != null) {
+            fireFull();
+            listener.percolated();
         }
     }
 
+    // store the open neighbours of index in neighbours[], return how many there are
+    private int neighbours(int index) {
+        int row = index / n, col = index - row * n;
+        int count = 0;
+        if (row > 0 && components.isOpen(index - n)) neighbours[count++] = index - n;
+        if (row < n - 1 && components.isOpen(index + n)) neighbours[count++] = index + n;
+        if (col > 0 && components.isOpen(index - 1)) neighbours[count++] = index - 1;
+        if (col < n - 1 && components.isOpen(index + 1)) neighbours[count++] = index + 1;
+        return count;
+    }
+
+    // before the new site at index joins its neighbours: if the merged component will
+    // be full, queue the new site and all sites of the neighbouring components that are not
+    private void collectFull(int index, int count) {
+        boolean full = (components.flags(index) & TOP) != 0;
+        for (int i = 0; i < count; i++) {
+            neighbours[i] = components.find(neighbours[i]);
+            if ((components.flags(neighbours[i]) & TOP) != 0) full = true;
+        }
+        if (!full) return;
+        pendingCount = 0;
+        enqueue(index);
+        for (int i = 0; i < count; i++) {
+            int root = neighbours[i];
+            if ((components.flags(root) & TOP) != 0) continue;
+            // each component once, the same root may be next to the site twice
+            boolean seen = false;
+            for (int j = 0; j < i; j++) seen |= neighbours[j] == root;
+            if (seen) continue;
+            int site = root;
+            do {
+                enqueue(site);
+                site = next[site];
+            } while (site != root);
+        }
+    }
+
+    private void enqueue(int site) {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(16, 2 * pending.length));
+        }
+        pending[pendingCount++] = site;
+    }
+
+    // tell the listener about the sites queued by collectFull()
+    private void fireFull() {
+        for (int i = 0; i < pendingCount; i++) {
+            listener.siteFull(pending[i] / n + 1, pending[i] % n + 1);
+        }
+        pendingCount = 0;
+    }
+
     // is the site (row, col) open?
     public boolean isOpen(int row, int col) {
-        int index = get1DIndex(row, col);
-        return grid[index];
+        return components.isOpen(get1DIndex(row, col));
     }
 
     // is the site (row, col) full?
     public boolean isFull(int row, int col) {
-        int index = get1DIndex(row, col);
-        if (!grid[index]) return false;
-        return uf2.find(n * n) == uf2.find(index);
+        // only the root knows whether the component reaches the top, so no backwash
+        return (components.flags(get1DIndex(row, col)) & TOP) != 0;
     }
 
     // returns the number of open sites
@@ -59,8 +166,20 @@ public class Percolation {
 
     // does the system percolate?
     public boolean percolates() {
-        // what if input grid only has 1 line? we should check numberOfOpenSites
-        return uf1.find(n * n) == uf1.find(n * n + 1) && numberOfOpenSites() > 0;
+        return percolates;
+    }
+
+    // connect open site p with open neighbour q
+    private void union(int p, int q) {
+        int rootP = components.find(p), rootQ = components.find(q);
+        if (rootP == rootQ) return;
+        components.link(rootP, rootQ);
+        if (next != null) {
+            // splice the two circular lists
+            int temp = next[rootP];
+            next[rootP] = next[rootQ];
+            next[rootQ] = temp;
+        }
     }
 
     // convert 1-based 2D indices to 0-based 1D index
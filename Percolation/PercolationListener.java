@@ -0,0 +1,13 @@
+/**
+ * Receives state changes of a Percolation system as sites are opened,
+ * so that callers do not have to poll percolates() and isFull().
+ * Callbacks run inside open() and must not open sites themselves.
+ */
+public interface PercolationListener {
+
+    // the system percolates for the first time
+    void percolated();
+
+    // the site (row, col) has just become full
+    void siteFull(int row, int col);
+}
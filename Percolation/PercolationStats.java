@@ -26,7 +26,7 @@ public class PercolationStats {
             Percolation p = new Percolation(n);
             for (int j = 0; j < n * n; j++) {
                 int index = indices[j];
-                p.open(index / n + 1, index % n + 1);
+                p.open(index);
                 if (p.percolates()) {
                     // store ith test result
                     res[i] = (double) p.numberOfOpenSites() / (n * n);
@@ -0,0 +1,281 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Randomized queue for many producer and consumer threads, split into stripes
+ * that are locked separately instead of one queue behind a global lock.
+ *
+ * Uniformity: dequeue picks a stripe with probability proportional to its size,
+ * read without locking, then a uniform item of that stripe under its lock. With
+ * no concurrent changes every item is equally likely, as in RandomizedQueue.
+ * While other threads change the stripes the sizes read can be stale by a few
+ * items each, so an item's probability is off by about stripes / size relative
+ * (0.1% for 64 stripes and 64K items, more for nearly empty queues). Stripes are
+ * kept balanced by enqueueing into the smaller of two random stripes, so that no
+ * stripe runs dry long before the others.
+ */
+public class ConcurrentRandomizedQueue<Item> {
+
+    private final Stripe<Item>[] stripes;
+
+    // construct an empty queue with two stripes per processor
+    public ConcurrentRandomizedQueue() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    // construct an empty queue with the given number of stripes
+    public ConcurrentRandomizedQueue(int stripes) {
+        if (stripes <= 0) throw new IllegalArgumentException();
+        @SuppressWarnings("unchecked")
+        Stripe<Item>[] array = (Stripe<Item>[]) new Stripe<?>[stripes];
+        for (int i = 0; i < stripes; i++) array[i] = new Stripe<>();
+        this.stripes = array;
+    }
+
+    // is the queue empty? A snapshot if other threads are active
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // return the number of items, a snapshot if other threads are active
+    public int size() {
+        int res = 0;
+        for (Stripe<Item> stripe : stripes) res += stripe.size;
+        return res;
+    }
+
+    // add the item to the smaller of two random stripes
+    public void enqueue(Item item) {
+        if (item == null) throw new IllegalArgumentException();
+        // two stripe choices from the halves of one random long (multiply-shift, the
+        // bias is at most stripes / 2^32 and only affects balance)
+        long r = ThreadLocalRandom.current().nextLong();
+        Stripe<Item> a = stripes[(int) (((r >>> 32) * stripes.length) >>> 32)];
+        Stripe<Item> b = stripes[(int) (((r & 0xffffffffL) * stripes.length) >>> 32)];
+        Stripe<Item> stripe = a.size <= b.size ? a : b;
+        synchronized (stripe) {
+            stripe.add(item);
+        }
+    }
+
+    // remove and return a random item
+    public Item dequeue() {
+        Item item = poll();
+        if (item == null) throw new NoSuchElementException();
+        return item;
+    }
+
+    // remove and return a random item, or null if the queue is empty
+    public Item poll() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            int total = 0;
+            for (Stripe<Item> stripe : stripes) total += stripe.size;
+            if (total == 0) return null;
+            int r = uniform(random, total);
+            int i = 0;
+            while (i < stripes.length - 1 && r >= stripes[i].size) r -= stripes[i++].size;
+            Stripe<Item> stripe = stripes[i];
+            synchronized (stripe) {
+                // emptied since the sizes were read: pick again
+                if (stripe.size > 0) return stripe.take(uniform(random, stripe.size));
+            }
+        }
+    }
+
+    // uniform in [0, bound), Lemire's nearly divisionless method as in RandomizedQueue
+    private static int uniform(ThreadLocalRandom random, int bound) {
+        long m = (random.nextInt() & 0xffffffffL) * bound;
+        if ((m & 0xffffffffL) < bound) {
+            long threshold = (1L << 32) % bound;
+            while ((m & 0xffffffffL) < threshold) m = (random.nextInt() & 0xffffffffL) * bound;
+        }
+        return (int) (m >>> 32);
+    }
+
+    // items of one stripe, guarded by the stripe's monitor; size is also read without it
+    private static class Stripe<Item> {
+
+        private static final int MIN_CAPACITY = 16;
+
+        private Item[] items = newArray(MIN_CAPACITY);
+        volatile int size;
+
+        void add(Item item) {
+            if (size == items.length) resize(2 * items.length);
+            items[size] = item;
+            size++;
+        }
+
+        Item take(int i) {
+            Item item = items[i];
+            int last = size - 1;
+            items[i] = items[last];
+            items[last] = null;
+            size = last;
+            if (items.length > MIN_CAPACITY && last <= items.length / 4) resize(items.length / 2);
+            return item;
+        }
+
+        private void resize(int capacity) {
+            Item[] copy = newArray(capacity);
+            System.arraycopy(items, 0, copy, 0, size);
+            items = copy;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <Item> Item[] newArray(int capacity) {
+            return (Item[]) new Object[capacity];
+        }
+    }
+
+    // n items enqueued by threads threads, then dequeued concurrently by the same
+    // number of threads; every item must come out exactly once
+    private static void stress(int n, int threads) throws InterruptedException {
+        ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>();
+        AtomicIntegerArray seen = new AtomicIntegerArray(n);
+        AtomicInteger taken = new AtomicInteger();
+        Thread[] workers = new Thread[2 * threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                for (int i = first; i < n; i += threads) queue.enqueue(i);
+            });
+            workers[threads + t] = new Thread(() -> {
+                while (taken.get() < n) {
+                    Integer item = queue.poll();
+                    if (item == null) continue;
+                    seen.incrementAndGet(item);
+                    taken.incrementAndGet();
+                }
+            });
+        }
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) worker.join();
+        for (int i = 0; i < n; i++) {
+            if (seen.get(i) != 1) throw new IllegalStateException("item " + i + " seen " + seen.get(i) + " times");
+        }
+        System.out.println("stress: " + n + " items with " + threads + " producers and consumers ok");
+    }
+
+    // chi-square statistic of the first item dequeued from m items enqueued by
+    // several threads, over the given number of trials; m - 1 degrees of freedom
+    private static void uniformity(int m, int trials, int threads) throws InterruptedException {
+        int[] count = new int[m];
+        for (int trial = 0; trial < trials; trial++) {
+            ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>(8);
+            Thread[] producers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                producers[t] = new Thread(() -> {
+                    for (int i = first; i < m; i += threads) queue.enqueue(i);
+                });
+                producers[t].start();
+            }
+            for (Thread producer : producers) producer.join();
+            count[queue.dequeue()]++;
+        }
+        double expected = (double) trials / m, chi2 = 0;
+        for (int c : count) chi2 += (c - expected) * (c - expected) / expected;
+        System.out.printf("uniformity: chi-square %.1f for %d degrees of freedom (mean %d, sd %.1f)%n",
+                chi2, m - 1, m - 1, Math.sqrt(2 * (m - 1)));
+    }
+
+    // chi-square statistic of the items taken by consumers threads that each dequeue
+    // one item while producers threads enqueue new items, over the given number of
+    // trials. Every trial starts with stripe s holding 2 (s + 1) of the m items, so a
+    // choice of stripe that does not follow their sizes shows up. Sizes read while
+    // others change them make an item's probability off by up to about stripes / m
+    // relative, which adds at most samples * (stripes / m)^2 to the expected statistic
+    private static void concurrentUniformity(int stripes, int consumers, int producers, int trials)
+            throws InterruptedException {
+        int m = stripes * (stripes + 1);
+        int[] count = new int[m];
+        for (int trial = 0; trial < trials; trial++) {
+            ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>(stripes);
+            for (int i = 0, s = 0; s < stripes; s++) {
+                for (int j = 0; j < 2 * (s + 1); j++) queue.stripes[s].add(i++);
+            }
+            int[] taken = new int[consumers];
+            Thread[] workers = new Thread[consumers + producers];
+            for (int t = 0; t < consumers; t++) {
+                int index = t;
+                workers[t] = new Thread(() -> taken[index] = queue.dequeue());
+            }
+            for (int t = 0; t < producers; t++) {
+                int first = m + t;
+                workers[consumers + t] = new Thread(() -> {
+                    for (int i = 0; i < m; i++) queue.enqueue(first + i * producers);
+                });
+            }
+            for (Thread worker : workers) worker.start();
+            for (Thread worker : workers) worker.join();
+            // items enqueued during the trial do not count
+            for (int item : taken) {
+                if (item < m) count[item]++;
+            }
+        }
+        long samples = 0;
+        for (int c : count) samples += c;
+        double expected = (double) samples / m, chi2 = 0;
+        for (int c : count) chi2 += (c - expected) * (c - expected) / expected;
+        double bias = (double) stripes / m;
+        double bound = (m - 1) + samples * bias * bias + 6 * Math.sqrt(2 * (m - 1));
+        System.out.printf("concurrent uniformity: chi-square %.1f for %d degrees of freedom (bound %.1f)%n",
+                chi2, m - 1, bound);
+        if (chi2 > bound) throw new IllegalStateException("dequeue is not uniform under contention");
+    }
+
+    // every thread alternates enqueue and dequeue; millions of operations per second
+    // for this queue and for a RandomizedQueue behind one lock
+    private static void bench(int maxThreads, int ops) throws InterruptedException {
+        System.out.printf("%8s %12s %12s%n", "threads", "striped", "locked");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ConcurrentRandomizedQueue<Integer> striped = new ConcurrentRandomizedQueue<>();
+            RandomizedQueue<Integer> locked = new RandomizedQueue<>();
+            for (int i = 0; i < 1 << 16; i++) {
+                striped.enqueue(i);
+                locked.enqueue(i);
+            }
+            double[] res = new double[2];
+            for (int rep = 0; rep < 3; rep++) {
+                res[0] = Math.max(res[0], run(threads, ops / threads, () -> striped.enqueue(striped.dequeue())));
+                res[1] = Math.max(res[1], run(threads, ops / threads, () -> {
+                    synchronized (locked) {
+                        locked.enqueue(locked.dequeue());
+                    }
+                }));
+            }
+            System.out.printf("%8d %12.1f %12.1f%n", threads, res[0], res[1]);
+        }
+    }
+
+    private static double run(int threads, int ops, Runnable op) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < ops; i++) op.run();
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) worker.join();
+        return 2.0 * threads * ops / ((System.nanoTime() - start) / 1e3);
+    }
+
+    // test client: "bench [maxThreads] [ops]", otherwise the stress and uniformity tests,
+    // on a quiescent queue and under contention
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench(args.length > 1 ? Integer.parseInt(args[1]) : 2 * cores,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4_000_000);
+            return;
+        }
+        stress(2_000_000, Math.max(2, cores));
+        uniformity(20, 20_000, 4);
+        concurrentUniformity(8, 4, 2, 10_000);
+    }
+}
@@ -1,15 +1,22 @@
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class Deque<Item> implements Iterable<Item> {
 
-    private Node<Item> first, last;
+    // capacity is a power of two, never below MIN_CAPACITY
+    private static final int MIN_CAPACITY = 8;
+
+    // circular buffer: the items are items[head], items[head + 1], ... (mod capacity)
+    private Item[] items;
+    private int head;
     private int size;
+    // changes on every add and remove, checked by iterators
+    private int modCount;
 
     // construct an empty deque
     public Deque() {
-        size = 0;
-        first = null;
-        last = null;
+        items = newArray(MIN_CAPACITY);
     }
 
     // is the deque empty?
@@ -25,87 +32,88 @@ public class Deque<Item> implements Iterable<Item> {
     // add the item to the front
     public void addFirst(Item item) {
         if (item == null) throw new IllegalArgumentException();
-        Node<Item> node = new Node<>(item);
-        if (first == null && last == null) {
-            first = node;
-            last = node;
-        } else {
-            node.next = first;
-            if (first != null) first.pre = node;
-            first = node;
-        }
+        if (size == items.length) resize(2 * items.length);
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
         size++;
+        modCount++;
     }
 
     // add the item to the back
     public void addLast(Item item) {
         if (item == null) throw new IllegalArgumentException();
-        Node<Item> node = new Node<>(item);
-        if (first == null && last == null) {
-            first = node;
-            last = node;
-        } else {
-            last.next = node;
-            node.pre = last;
-            last = node;
-        }
+        if (size == items.length) resize(2 * items.length);
+        items[(head + size) & (items.length - 1)] = item;
         size++;
+        modCount++;
     }
 
     // remove and return the item from the front
     public Item removeFirst() {
-        if (first == null) throw new java.util.NoSuchElementException();
-        Item item = first.getItem();
-        if (first == last) {
-            first = null;
-            last = null;
-        } else {
-            first = first.next;
-            first.pre = null;
-        }
+        if (size == 0) throw new NoSuchElementException();
+        Item item = items[head];
+        items[head] = null;
+        head = (head + 1) & (items.length - 1);
         size--;
+        modCount++;
+        shrink();
         return item;
     }
 
     // remove and return the item from the back
     public Item removeLast() {
-        if (last == null) throw new java.util.NoSuchElementException();
-        Item item = last.getItem();
-        if (first == last) {
-            first = null;
-            last = null;
-        } else {
-            last = last.pre;
-            last.next = null;
-        }
+        if (size == 0) throw new NoSuchElementException();
+        int index = (head + size - 1) & (items.length - 1);
+        Item item = items[index];
+        items[index] = null;
         size--;
+        modCount++;
+        shrink();
         return item;
     }
 
     // return an iterator over items in order from front to back
     public Iterator<Item> iterator() {
-        return new DequeIterator<>(first);
+        return new DequeIterator();
     }
 
-    private static class DequeIterator<Item> implements Iterator<Item> {
+    // halve the capacity once the deque is a quarter full, so that
+    // alternating adds and removes at the boundary never resize twice in a row
+    private void shrink() {
+        if (items.length > MIN_CAPACITY && size <= items.length / 4) resize(items.length / 2);
+    }
 
-        private Node<Item> curr;
+    // move the items to a new buffer of the given capacity, starting at index 0
+    private void resize(int capacity) {
+        Item[] copy = newArray(capacity);
+        int firstPart = Math.min(size, items.length - head);
+        System.arraycopy(items, head, copy, 0, firstPart);
+        System.arraycopy(items, 0, copy, firstPart, size - firstPart);
+        items = copy;
+        head = 0;
+    }
 
-        DequeIterator(Node<Item> curr) {
-            this.curr = curr;
-        }
+    @SuppressWarnings("unchecked")
+    private static <Item> Item[] newArray(int capacity) {
+        return (Item[]) new Object[capacity];
+    }
+
+    // fails fast if the deque changes while iterating
+    private class DequeIterator implements Iterator<Item> {
+
+        private final int expectedModCount = modCount;
+        private int next;
 
         @Override
         public boolean hasNext() {
-            return curr != null;
+            return next < size;
         }
 
         @Override
         public Item next() {
-            if (!hasNext()) throw new java.util.NoSuchElementException();
-            Item item = curr.getItem();
-            curr = curr.next;
-            return item;
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return items[(head + next++) & (items.length - 1)];
         }
 
         @Override
@@ -114,20 +122,6 @@ public class Deque<Item> implements Iterable<Item> {
         }
     }
 
-    private static class Node<Item> {
-
-        Node<Item> pre, next;
-        private final Item item;
-
-        Node(Item item) {
-            this.item = item;
-        }
-
-        public Item getItem() {
-            return item;
-        }
-    }
-
     // unit testing (required)
     public static void main(String[] args) {
         Deque<Integer> deque = new Deque<>();
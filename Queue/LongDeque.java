@@ -0,0 +1,113 @@
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Deque of long values, with the same circular buffer as Deque but no boxing.
+ */
+public class LongDeque {
+
+    // capacity is a power of two, never below MIN_CAPACITY
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] items;
+    private int head;
+    private int size;
+    private int modCount;
+
+    // construct an empty deque
+    public LongDeque() {
+        items = new long[MIN_CAPACITY];
+    }
+
+    // is the deque empty?
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // return the number of items on the deque
+    public int size() {
+        return size;
+    }
+
+    // add the item to the front
+    public void addFirst(long item) {
+        if (size == items.length) resize(2 * items.length);
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
+        size++;
+        modCount++;
+    }
+
+    // add the item to the back
+    public void addLast(long item) {
+        if (size == items.length) resize(2 * items.length);
+        items[(head + size) & (items.length - 1)] = item;
+        size++;
+        modCount++;
+    }
+
+    // remove and return the item from the front
+    public long removeFirst() {
+        if (size == 0) throw new NoSuchElementException();
+        long item = items[head];
+        head = (head + 1) & (items.length - 1);
+        size--;
+        modCount++;
+        shrink();
+        return item;
+    }
+
+    // remove and return the item from the back
+    public long removeLast() {
+        if (size == 0) throw new NoSuchElementException();
+        long item = items[(head + size - 1) & (items.length - 1)];
+        size--;
+        modCount++;
+        shrink();
+        return item;
+    }
+
+    // return an iterator over items in order from front to back
+    public PrimitiveIterator.OfLong iterator() {
+        return new LongDequeIterator();
+    }
+
+    private void shrink() {
+        if (items.length > MIN_CAPACITY && size <= items.length / 4) resize(items.length / 2);
+    }
+
+    private void resize(int capacity) {
+        long[] copy = new long[capacity];
+        int firstPart = Math.min(size, items.length - head);
+        System.arraycopy(items, head, copy, 0, firstPart);
+        System.arraycopy(items, 0, copy, firstPart, size - firstPart);
+        items = copy;
+        head = 0;
+    }
+
+    private class LongDequeIterator implements PrimitiveIterator.OfLong {
+
+        private final int expectedModCount = modCount;
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public long nextLong() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            return items[(head + next++) & (items.length - 1)];
+        }
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        LongDeque deque = new LongDeque();
+        for (int i = 0; i < 100; i++) deque.addFirst(i);
+        for (int i = 0; i < 100; i++) deque.removeLast();
+    }
+}
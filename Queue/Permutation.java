@@ -1,17 +1,120 @@
-import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 public class Permutation {
 
+    // k of the tokens, uniformly, keeping only k of them in memory (Li's Algorithm L):
+    // the gap to the next token that enters the reservoir is drawn directly, so the
+    // tokens in between are skipped without being turned into strings
+    static String[] sample(Tokenizer in, int k, SplittableRandom random) {
+        if (k < 0) throw new IllegalArgumentException();
+        String[] reservoir = new String[k];
+        int size = 0;
+        while (size < k) {
+            String token = in.next();
+            if (token == null) return Arrays.copyOf(reservoir, size);
+            reservoir[size++] = token;
+        }
+        if (k == 0) return reservoir;
+        double w = Math.exp(Math.log(random.nextDouble()) / k);
+        while (true) {
+            long gap = (long) Math.floor(Math.log(random.nextDouble()) / Math.log1p(-w));
+            for (long i = 0; i < gap; i++) {
+                if (!in.skip()) return reservoir;
+            }
+            String token = in.next();
+            if (token == null) return reservoir;
+            reservoir[random.nextInt(k)] = token;
+            w *= Math.exp(Math.log(random.nextDouble()) / k);
+        }
+    }
+
+    // k of the (token, weight) pairs, each picked with probability proportional to its
+    // weight, without replacement (Efraimidis and Spirakis, A-ExpJ). Every kept token has
+    // the key u^(1 / weight), stored as its logarithm; instead of drawing a key for every
+    // pair, the total weight to skip before the next one that beats the smallest key is drawn
+    static String[] weightedSample(Tokenizer in, int k, SplittableRandom random) {
+        if (k < 0) throw new IllegalArgumentException();
+        String[] items = new String[k];
+        double[] keys = new double[k];
+        int size = 0;
+        while (size < k) {
+            String token = in.next();
+            if (token == null) return Arrays.copyOf(items, size);
+            double weight = weight(in);
+            items[size] = token;
+            keys[size] = Math.log(random.nextDouble()) / weight;
+            swim(keys, items, size++);
+        }
+        if (k == 0) return items;
+        // keys[0] is the log of the smallest key T, the next pair is picked once
+        // the weight since the last pick reaches log(r) / log(T)
+        double skip = Math.log(random.nextDouble()) / keys[0];
+        while (true) {
+            String token = in.next();
+            if (token == null) return items;
+            double weight = weight(in);
+            skip -= weight;
+            if (skip > 0) continue;
+            // the new key is uniform in (T^weight, 1)
+            double low = Math.exp(keys[0] * weight);
+            double u = low + (1 - low) * random.nextDouble();
+            items[0] = token;
+            keys[0] = Math.log(u) / weight;
+            sink(keys, items, k);
+            skip = Math.log(random.nextDouble()) / keys[0];
+        }
+    }
+
+    private static double weight(Tokenizer in) {
+        double weight = in.nextDouble();
+        if (!(weight > 0) || Double.isInfinite(weight)) throw new IllegalArgumentException("bad weight " + weight);
+        return weight;
+    }
+
+    // min-heap on keys[0, n), with items moving along
+    private static void swim(double[] keys, String[] items, int i) {
+        while (i > 0 && keys[(i - 1) / 2] > keys[i]) {
+            exch(keys, items, i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+    }
+
+    private static void sink(double[] keys, String[] items, int n) {
+        int i = 0;
+        while (2 * i + 1 < n) {
+            int j = 2 * i + 1;
+            if (j + 1 < n && keys[j + 1] < keys[j]) j++;
+            if (keys[i] <= keys[j]) break;
+            exch(keys, items, i, j);
+            i = j;
+        }
+    }
+
+    private static void exch(double[] keys, String[] items, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        String item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+    }
+
+    // print k of the tokens on standard input in random order;
+    // with "-w" the input is (token, weight) pairs and heavier tokens are more likely
     public static void main(String[] args) {
         int size = Integer.parseInt(args[0]);
-        RandomizedQueue<String> randomizedQueue = new RandomizedQueue<>();
-        while (!StdIn.isEmpty()) {
-            randomizedQueue.enqueue(StdIn.readString());
-        }
+        boolean weighted = args.length > 1 && args[1].equals("-w");
+        SplittableRandom random = new SplittableRandom();
+        Tokenizer in = new Tokenizer();
+        String[] sample = weighted ? weightedSample(in, size, random) : sample(in, size, random);
 
-        for (int i = 0; i < size; i++) {
+        // the reservoir is not in random order, the queue shuffles it
+        RandomizedQueue<String> randomizedQueue = new RandomizedQueue<>();
+        for (String item : sample) randomizedQueue.enqueue(item);
+        while (!randomizedQueue.isEmpty()) {
             StdOut.println(randomizedQueue.dequeue());
         }
     }
-}
\ No newline at end of file
+}
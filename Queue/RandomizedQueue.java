@@ -1,153 +1,272 @@
-import edu.princeton.cs.algs4.StdRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
 
 public class RandomizedQueue<Item> implements Iterable<Item> {
 
-    private final DynamicArray<Item> container;
+    private static final int MIN_CAPACITY = 8;
+    // largest array size the VM reliably allocates
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    // items[0, size), in no particular order; the capacity doubles when full
+    // and halves at a quarter full, so resizing is amortized O(1) even when
+    // enqueue and dequeue alternate at a boundary
+    private Item[] items;
+    private int size;
+    // changes on every enqueue and dequeue, checked by iterators
+    private int modCount;
+    // per-queue generator, no contention on a shared one
+    private final SplittableRandom random;
 
     // construct an empty randomized queue
     public RandomizedQueue() {
-        container = new DynamicArray<>();
+        this(new SplittableRandom());
+    }
+
+    // construct an empty randomized queue whose order depends only on seed
+    public RandomizedQueue(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private RandomizedQueue(SplittableRandom random) {
+        this.random = random;
+        items = newArray(MIN_CAPACITY);
     }
 
     // is the randomized queue empty?
     public boolean isEmpty() {
-        return container.size() == 0;
+        return size == 0;
     }
 
     // return the number of items on the randomized queue
     public int size() {
-        return container.size();
+        return size;
     }
 
     // add the item
     public void enqueue(Item item) {
         if (item == null) throw new IllegalArgumentException();
-        container.add(item);
+        if (size == items.length) resize(capacityFor(size + 1L));
+        items[size++] = item;
+        modCount++;
+    }
+
+    // add all items, resizing at most once if the number of items is known
+    public void enqueueAll(Iterable<? extends Item> all) {
+        if (all == null) throw new IllegalArgumentException();
+        if (all instanceof Collection) {
+            int capacity = capacityFor((long) size + ((Collection<?>) all).size());
+            if (capacity != items.length) resize(capacity);
+        }
+        for (Item item : all) enqueue(item);
     }
 
     // remove and return a random item
     public Item dequeue() {
-        if (isEmpty()) throw new java.util.NoSuchElementException();
-        int random = StdRandom.uniform(container.size());
-        Item item = container.get(random);
-        swap(random, container.size() - 1);
-        container.remove();
+        if (isEmpty()) throw new NoSuchElementException();
+        Item item = take(uniform(size));
+        shrink();
         return item;
     }
 
+    // remove and return k random items, in random order
+    public List<Item> dequeue(int k) {
+        if (k < 0) throw new IllegalArgumentException();
+        if (k > size) throw new NoSuchElementException();
+        List<Item> res = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) res.add(take(uniform(size)));
+        shrink();
+        return res;
+    }
+
     // return a random item (but do not remove it)
     public Item sample() {
-        if (isEmpty()) throw new java.util.NoSuchElementException();
-        int random = StdRandom.uniform(container.size());
-        return container.get(random);
+        if (isEmpty()) throw new NoSuchElementException();
+        return items[uniform(size)];
     }
 
-    // swap two elements
-    private void swap(int i, int j) {
-        Item temp = container.get(i);
-        container.set(i, container.get(j));
-        container.set(j, temp);
+    // remove items[i] by moving the last item into its place
+    private Item take(int i) {
+        Item item = items[i];
+        items[i] = items[--size];
+        items[size] = null;
+        modCount++;
+        return item;
     }
 
-    // return an independent iterator over items in random order
-    public Iterator<Item> iterator() {
-        return container.iterator();
+    // the capacity doubled until it holds needed items, at most MAX_CAPACITY
+    private int capacityFor(long needed) {
+        if (needed > MAX_CAPACITY) throw new IllegalStateException("randomized queue is full");
+        long capacity = items.length;
+        while (capacity < needed) capacity *= 2;
+        return (int) Math.min(capacity, MAX_CAPACITY);
     }
 
-    // unit testing (required)
-    public static void main(String[] args) {
-        RandomizedQueue<Integer> queue = new RandomizedQueue<>();
-        for (int i = 1; i <= 100; i++) queue.enqueue(i);
-        for (int i = 1; i <= 100; i++) System.out.println(queue.dequeue());
+    private void shrink() {
+        int capacity = items.length;
+        while (capacity > MIN_CAPACITY && size <= capacity / 4) capacity /= 2;
+        if (capacity != items.length) resize(capacity);
     }
 
-    private static class DynamicArray<Item> implements Iterable<Item> {
-
-        private int index;
-        private Item[] buffer;
+    private void resize(int capacity) {
+        Item[] copy = newArray(capacity);
+        System.arraycopy(items, 0, copy, 0, size);
+        items = copy;
+    }
 
-        public DynamicArray() {
-            index = -1;
-            buffer = (Item[]) new Object[10];
+    // uniform in [0, bound), Lemire's nearly divisionless method: the high half of a
+    // 32-bit random number times bound, rejecting the few low halves that would bias it
+    private int uniform(int bound) {
+        long m = (random.nextInt() & 0xffffffffL) * bound;
+        if ((m & 0xffffffffL) < bound) {
+            long threshold = (1L << 32) % bound;
+            while ((m & 0xffffffffL) < threshold) m = (random.nextInt() & 0xffffffffL) * bound;
         }
+        return (int) (m >>> 32);
+    }
 
-        public Item get(int pos) {
-            if (index < 0 || pos > index) {
-                throw new IllegalArgumentException();
-            }
-            return buffer[pos];
-        }
+    @SuppressWarnings("unchecked")
+    private static <Item> Item[] newArray(int capacity) {
+        return (Item[]) new Object[capacity];
+    }
 
-        public void add(Item item) {
-            if (size() >= buffer.length / 2) grow();
-            buffer[++index] = item;
-        }
+    // return an independent iterator over items in random order
+    public Iterator<Item> iterator() {
+        return new RandomizedQueueIterator();
+    }
 
-        private void grow() {
-            int capacity = buffer.length;
-            Item[] temp = (Item[]) new Object[capacity / 2 * 3 + 1];
-            System.arraycopy(buffer, 0, temp, 0, capacity);
-            buffer = temp;
-        }
+    // visits items[0, n) in the order of a pseudorandom permutation of [0, n): a
+    // Feistel network with random round keys permutes [0, 4^h) for the smallest h
+    // with 4^h >= n, and indices that land outside [0, n) are permuted again until
+    // they do (cycle walking), fewer than 4 times on average. So the iterator needs
+    // O(1) memory and no setup, instead of a shuffled copy of the items. The order
+    // is not exactly uniform over all n! permutations, only statistically close to
+    // it; queues of at most SMALL items, where a Feistel network on a few bits mixes
+    // poorly, are shuffled eagerly instead
+    private class RandomizedQueueIterator implements Iterator<Item> {
 
-        private void reduce() {
-            int capacity = buffer.length;
-            Item[] temp = (Item[]) new Object[capacity / 4];
-            if (index + 1 >= 0) System.arraycopy(buffer, 0, temp, 0, index + 1);
-            buffer = temp;
+        private static final int SMALL = 64;
+        private static final int ROUNDS = 6;
+
+        private final int n = size;
+        private final int expectedModCount = modCount;
+        private final int halfBits, halfMask;
+        private final int[] keys = new int[ROUNDS];
+        // shuffled indices for small queues, null otherwise
+        private final byte[] order;
+        private int curr;
+
+        RandomizedQueueIterator() {
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+            halfBits = (bits + 1) / 2;
+            halfMask = (1 << halfBits) - 1;
+            for (int r = 0; r < ROUNDS; r++) keys[r] = random.nextInt();
+            if (n > SMALL) {
+                order = null;
+                return;
+            }
+            order = new byte[n];
+            for (int i = 0; i < n; i++) order[i] = (byte) i;
+            // Fisher-Yates
+            for (int i = n - 1; i > 0; i--) {
+                int j = uniform(i + 1);
+                byte temp = order[i];
+                order[i] = order[j];
+                order[j] = temp;
+            }
         }
 
-        public int size() {
-            return index + 1;
+        @Override
+        public boolean hasNext() {
+            return curr < n;
         }
 
-        public void set(int pos, Item item) {
-            if (index < 0 || pos > index) {
-                throw new IllegalArgumentException();
-            }
-            buffer[pos] = item;
+        @Override
+        public Item next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (!hasNext()) throw new NoSuchElementException();
+            if (order != null) return items[order[curr++]];
+            int index = curr++;
+            // the domain has up to 32 bits, so compare unsigned
+            do {
+                index = permute(index);
+            } while (Integer.compareUnsigned(index, n) >= 0);
+            return items[index];
         }
 
-        public void remove() {
-            if (index < 0) {
-                throw new IllegalArgumentException();
+        // balanced Feistel network on 2 * halfBits bits
+        private int permute(int x) {
+            int left = x >>> halfBits, right = x & halfMask;
+            for (int r = 0; r < ROUNDS; r++) {
+                int temp = right;
+                right = left ^ (mix(right ^ keys[r]) & halfMask);
+                left = temp;
             }
-            if (size() < buffer.length / 4) reduce();
-            index--;
+            return left << halfBits | right;
         }
 
         @Override
-        public Iterator<Item> iterator() {
-            return new DynamicArrayIterator<>(this);
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
+    }
 
-        private static class DynamicArrayIterator<Item> implements Iterator<Item> {
-
-            private final DynamicArray<Item> dynamicArray;
-            private int curr;
-            private final int[] indices;
+    // murmur3 finalizer
+    private static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        x ^= x >>> 16;
+        return x;
+    }
 
-            DynamicArrayIterator(DynamicArray<Item> dynamicArray) {
-                this.dynamicArray = dynamicArray;
-                indices = StdRandom.permutation(dynamicArray.size());
-            }
+    // enqueue n items, then dequeue them one at a time and in batches of 64,
+    // and alternate enqueue and dequeue at a size of n; prints millions of ops per second
+    private static void bench(int n) {
+        RandomizedQueue<Integer> queue = new RandomizedQueue<>(1);
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) values[i] = i;
+        for (int rep = 0; rep < 5; rep++) {
+            long start = System.nanoTime();
+            for (Integer value : values) queue.enqueue(value);
+            double enqueue = n / ((System.nanoTime() - start) / 1e3);
+            start = System.nanoTime();
+            while (!queue.isEmpty()) queue.dequeue();
+            double dequeue = n / ((System.nanoTime() - start) / 1e3);
 
-            @Override
-            public boolean hasNext() {
-                return curr < indices.length;
-            }
+            queue.enqueueAll(Arrays.asList(values));
+            start = System.nanoTime();
+            while (queue.size() >= 64) queue.dequeue(64);
+            double bulk = n / ((System.nanoTime() - start) / 1e3);
+            queue.dequeue(queue.size());
 
-            @Override
-            public Item next() {
-                if (!hasNext()) throw new java.util.NoSuchElementException();
-                return dynamicArray.get(indices[curr++]);
+            queue.enqueueAll(Arrays.asList(values));
+            start = System.nanoTime();
+            for (Integer value : values) {
+                queue.enqueue(value);
+                queue.dequeue();
             }
+            double mixed = 2 * n / ((System.nanoTime() - start) / 1e3);
+            queue.dequeue(queue.size());
+            System.out.printf("enqueue %6.1f  dequeue %6.1f  dequeue(64) %6.1f  mixed %6.1f Mops/s%n",
+                    enqueue, dequeue, bulk, mixed);
+        }
+    }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException();
-            }
+    // unit testing (required), "bench [n]" for throughput
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench(args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000);
+            return;
         }
+        RandomizedQueue<Integer> queue = new RandomizedQueue<>();
+        for (int i = 1; i <= 100; i++) queue.enqueue(i);
+        for (int i = 1; i <= 100; i++) System.out.println(queue.dequeue());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Whitespace-separated tokens of a byte stream, read through one buffer instead
+ * of a Scanner, and skippable without building a String. Tokens are decoded as
+ * UTF-8; only ASCII whitespace separates them.
+ */
+public class Tokenizer {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos, limit;
+    private byte[] token = new byte[64];
+
+    // tokens of standard input
+    public Tokenizer() {
+        this(System.in);
+    }
+
+    public Tokenizer(InputStream in) {
+        if (in == null) throw new IllegalArgumentException();
+        this.in = in;
+    }
+
+    // the next token, or null at the end of the stream
+    public String next() {
+        if (!skipWhitespace()) return null;
+        int length = 0;
+        for (int b = peek(); b > ' '; b = peek()) {
+            if (length == token.length) token = Arrays.copyOf(token, 2 * length);
+            token[length++] = (byte) b;
+            pos++;
+        }
+        return new String(token, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // the next token as a double
+    public double nextDouble() {
+        String s = next();
+        if (s == null) throw new NoSuchElementException();
+        return Double.parseDouble(s);
+    }
+
+    // pass over the next token, false at the end of the stream
+    public boolean skip() {
+        if (!skipWhitespace()) return false;
+        while (peek() > ' ') pos++;
+        return true;
+    }
+
+    // false if only whitespace is left
+    private boolean skipWhitespace() {
+        for (int b = peek(); b >= 0; b = peek()) {
+            if (b > ' ') return true;
+            pos++;
+        }
+        return false;
+    }
+
+    // the byte at pos without consuming it, -1 at the end of the stream
+    private int peek() {
+        if (pos == limit) {
+            try {
+                limit = in.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos] & 0xff;
+    }
+}
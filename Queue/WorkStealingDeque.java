@@ -0,0 +1,220 @@
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chase-Lev work-stealing deque. One owner thread pushes and pops items at the
+ * bottom; any other thread may steal items from the top. The owner only needs a
+ * CAS when it takes the last item, which is the only case where it can race with
+ * a thief. Items live in a circular array that the owner doubles when it is full.
+ *
+ * See Chase and Lev, "Dynamic Circular Work-Stealing Deque" (SPAA 2005), and Le
+ * et al., "Correct and Efficient Work-Stealing for Weak Memory Models" (PPoPP 2013).
+ */
+public class WorkStealingDeque<Item> {
+
+    private static final int MIN_CAPACITY = 64;
+
+    // next index to steal; only grows, by CAS
+    private final AtomicLong top = new AtomicLong();
+    // next index to push; written by the owner only
+    private volatile long bottom;
+    // capacity is a power of two; items [top, bottom) are at index & (length - 1)
+    private volatile Item[] items = newArray(MIN_CAPACITY);
+
+    // is the deque empty? Only a snapshot if other threads are active
+    public boolean isEmpty() {
+        return bottom <= top.get();
+    }
+
+    // return the number of items, a snapshot if other threads are active
+    public int size() {
+        return (int) Math.max(0, bottom - top.get());
+    }
+
+    // owner only: add the item at the bottom
+    public void push(Item item) {
+        if (item == null) throw new IllegalArgumentException();
+        long b = bottom, t = top.get();
+        Item[] a = items;
+        if (b - t >= a.length) {
+            a = grow(a, t, b);
+            items = a;
+        }
+        a[(int) b & (a.length - 1)] = item;
+        // publishes the item (and a new array) to thieves
+        bottom = b + 1;
+    }
+
+    // owner only: remove and return the item at the bottom, null if empty
+    public Item pop() {
+        long b = bottom - 1;
+        Item[] a = items;
+        // the volatile write before the volatile read of top keeps thieves from
+        // taking index b without seeing the new bottom
+        bottom = b;
+        long t = top.get();
+        if (b < t) {
+            bottom = t;
+            return null;
+        }
+        int index = (int) b & (a.length - 1);
+        Item item = a[index];
+        if (b > t) {
+            // thieves only read below the bottom they saw, so slot b is ours
+            a[index] = null;
+            return item;
+        }
+        // last item: race the thieves for it
+        if (!top.compareAndSet(t, t + 1)) item = null;
+        bottom = t + 1;
+        return item;
+    }
+
+    // any thread: remove and return the item at the top, null if empty
+    public Item steal() {
+        while (true) {
+            long t = top.get();
+            long b = bottom;
+            if (t >= b) return null;
+            Item[] a = items;
+            Item item = a[(int) t & (a.length - 1)];
+            // the slot cannot be reused while top is still t, so a successful CAS
+            // means the item read is the one at t
+            if (top.compareAndSet(t, t + 1)) return item;
+        }
+    }
+
+    // copy items [t, b) into an array twice as large
+    private static <Item> Item[] grow(Item[] a, long t, long b) {
+        Item[] copy = newArray(2 * a.length);
+        for (long i = t; i < b; i++) copy[(int) i & (copy.length - 1)] = a[(int) i & (a.length - 1)];
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Item> Item[] newArray(int capacity) {
+        return (Item[]) new Object[capacity];
+    }
+
+    // per-worker deque of a scheduler, as used by the benchmark
+    private interface WorkQueue {
+        void push(Integer task);
+        Integer pop();
+        Integer steal();
+    }
+
+    private static WorkQueue chaseLev() {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        return new WorkQueue() {
+            public void push(Integer task) { deque.push(task); }
+            public Integer pop() { return deque.pop(); }
+            public Integer steal() { return deque.steal(); }
+        };
+    }
+
+    private static WorkQueue concurrentLinked() {
+        ConcurrentLinkedDeque<Integer> deque = new ConcurrentLinkedDeque<>();
+        return new WorkQueue() {
+            public void push(Integer task) { deque.addLast(task); }
+            public Integer pop() { return deque.pollLast(); }
+            public Integer steal() { return deque.pollFirst(); }
+        };
+    }
+
+    private static WorkQueue locked() {
+        Deque<Integer> deque = new Deque<>();
+        return new WorkQueue() {
+            public synchronized void push(Integer task) { deque.addLast(task); }
+            public synchronized Integer pop() { return deque.isEmpty() ? null : deque.removeLast(); }
+            public synchronized Integer steal() { return deque.isEmpty() ? null : deque.removeFirst(); }
+        };
+    }
+
+    // every worker pushes bursts of 64 tasks, pops them, then tries a few steals from
+    // random victims, which race with their owners; returns millions of tasks per second
+    private static double bench(String kind, int threads, int tasksPerThread) throws InterruptedException {
+        WorkQueue[] queues = new WorkQueue[threads];
+        for (int i = 0; i < threads; i++) {
+            queues[i] = kind.equals("chase-lev") ? chaseLev() : kind.equals("concurrent") ? concurrentLinked() : locked();
+        }
+        int bursts = (tasksPerThread + 63) / 64;
+        Thread[] workers = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            WorkQueue own = queues[w];
+            workers[w] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int burst = 0; burst < bursts; burst++) {
+                    for (int i = 0; i < 64; i++) own.push(i);
+                    while (own.pop() != null) continue;
+                    for (int i = 0; i < 4; i++) queues[random.nextInt(threads)].steal();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) worker.join();
+        return (double) threads * bursts * 64 / ((System.nanoTime() - start) / 1e3);
+    }
+
+    // test client: "bench [maxThreads] [tasks]" compares with ConcurrentLinkedDeque
+    // and a synchronized Deque, otherwise a stress test where every item is taken exactly once
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0 && args[0].equals("bench")) {
+            int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+            int tasks = args.length > 2 ? Integer.parseInt(args[2]) : 2_000_000;
+            System.out.printf("%8s %12s %12s %12s%n", "threads", "chase-lev", "concurrent", "locked");
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double[] res = new double[3];
+                String[] kinds = {"chase-lev", "concurrent", "locked"};
+                for (int rep = 0; rep < 3; rep++) {
+                    for (int k = 0; k < kinds.length; k++) {
+                        res[k] = Math.max(res[k], bench(kinds[k], threads, tasks / threads));
+                    }
+                }
+                System.out.printf("%8d %12.1f %12.1f %12.1f%n", threads, res[0], res[1], res[2]);
+            }
+            return;
+        }
+        int thieves = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int n = 5_000_000;
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        AtomicIntegerArray taken = new AtomicIntegerArray(n);
+        AtomicInteger stolen = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread[] workers = new Thread[thieves];
+        for (int w = 0; w < thieves; w++) {
+            workers[w] = new Thread(() -> {
+                while (true) {
+                    Integer item = deque.steal();
+                    if (item != null) {
+                        taken.incrementAndGet(item);
+                        stolen.incrementAndGet();
+                    } else if (done.get()) {
+                        return;
+                    }
+                }
+            });
+            workers[w].start();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < n; ) {
+            for (int j = random.nextInt(200); j > 0 && i < n; j--) deque.push(i++);
+            for (int j = random.nextInt(200); j > 0; j--) {
+                Integer item = deque.pop();
+                if (item == null) break;
+                taken.incrementAndGet(item);
+            }
+        }
+        for (Integer item = deque.pop(); item != null; item = deque.pop()) taken.incrementAndGet(item);
+        done.set(true);
+        for (Thread worker : workers) worker.join();
+        for (int i = 0; i < n; i++) {
+            if (taken.get(i) != 1) throw new IllegalStateException("item " + i + " taken " + taken.get(i) + " times");
+        }
+        System.out.println(n + " items taken exactly once, " + stolen.get() + " by thieves");
+    }
+}